@@ -0,0 +1,130 @@
+package com.air.quality.prediction.aqi;
+
+import com.air.quality.prediction.model.AirQualityData;
+import com.air.quality.prediction.model.AirQualityParameter;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The US EPA air quality index: each pollutant's concentration is truncated to the
+ * precision of its breakpoint table and interpolated linearly within its category, and
+ * the index is the highest of these sub-indices. Concentrations above the last breakpoint
+ * are capped at 500.
+ * <p>
+ * The EPA defines the index on averages: 24 hours for PM, 8 hours for CO and 1 hour for
+ * NO2 and SO2. Applied to a single row, as {@link #apply} does, it is an instantaneous
+ * reading of the same scale.
+ * <p>
+ * Concentrations are taken in the units the measurements are stored in. The CSV does not
+ * state them; all gas channels of the multi-gas sensor, CO among them, are read as ppm,
+ * so NO2 and SO2 are converted to the ppb of their tables.
+ */
+public final class AqiCalculator {
+
+    /**
+     * The pollutants with breakpoint tables, in the order ties are resolved in.
+     */
+    public static final List<AirQualityParameter> POLLUTANTS = List.of(
+            AirQualityParameter.PM25, AirQualityParameter.PM10, AirQualityParameter.NO2,
+            AirQualityParameter.SO2, AirQualityParameter.CO);
+
+    private static final int[] INDEX_LOW = {0, 51, 101, 151, 201, 301};
+    private static final int[] INDEX_HIGH = {50, 100, 150, 200, 300, 500};
+
+    private static final Map<AirQualityParameter, Breakpoints> TABLES = new EnumMap<>(AirQualityParameter.class);
+
+    static {
+        // µg/m³, 24-hour, as revised in 2024.
+        TABLES.put(AirQualityParameter.PM25, new Breakpoints(1, 1,
+                new double[]{0.0, 9.1, 35.5, 55.5, 125.5, 225.5},
+                new double[]{9.0, 35.4, 55.4, 125.4, 225.4, 325.4}));
+        // µg/m³, 24-hour.
+        TABLES.put(AirQualityParameter.PM10, new Breakpoints(1, 0,
+                new double[]{0, 55, 155, 255, 355, 425},
+                new double[]{54, 154, 254, 354, 424, 604}));
+        // ppb, 1-hour; measured in ppm.
+        TABLES.put(AirQualityParameter.NO2, new Breakpoints(1000, 0,
+                new double[]{0, 54, 101, 361, 650, 1250},
+                new double[]{53, 100, 360, 649, 1249, 2049}));
+        // ppb, 1-hour, measured in ppm; the EPA bases the upper two categories on 24-hour means.
+        TABLES.put(AirQualityParameter.SO2, new Breakpoints(1000, 0,
+                new double[]{0, 36, 76, 186, 305, 605},
+                new double[]{35, 75, 185, 304, 604, 1004}));
+        // ppm, 8-hour.
+        TABLES.put(AirQualityParameter.CO, new Breakpoints(1, 1,
+                new double[]{0.0, 4.5, 9.5, 12.5, 15.5, 30.5},
+                new double[]{4.4, 9.4, 12.4, 15.4, 30.4, 50.4}));
+    }
+
+    /**
+     * An index and the pollutant it comes from.
+     */
+    public record Result(int aqi, AirQualityParameter pollutant) {
+    }
+
+    // perUnit converts a measured concentration to the unit of the table.
+    private record Breakpoints(double perUnit, int decimals, double[] low, double[] high) {
+    }
+
+    private AqiCalculator() {
+    }
+
+    /**
+     * The sub-index of {@code pollutant} at {@code concentration}, in the unit it is
+     * measured in, or -1 if the pollutant has no breakpoint table.
+     */
+    public static int subIndex(AirQualityParameter pollutant, double concentration) {
+        Breakpoints table = TABLES.get(pollutant);
+        if (table == null || Double.isNaN(concentration)) {
+            return -1;
+        }
+        double scale = Math.pow(10, table.decimals);
+        // The small offset keeps values such as 35.4, stored as 35.39999..., in their category.
+        double c = Math.max(0, Math.floor(concentration * table.perUnit * scale + 1e-9) / scale);
+        for (int i = 0; i < table.high.length; i++) {
+            if (c <= table.high[i]) {
+                double low = Math.min(c, table.low[i]);
+                return (int) Math.round((INDEX_HIGH[i] - INDEX_LOW[i]) / (table.high[i] - low) * (c - low)
+                        + INDEX_LOW[i]);
+            }
+        }
+        return INDEX_HIGH[INDEX_HIGH.length - 1];
+    }
+
+    /**
+     * The index of the given sub-indices, or null if there are none.
+     */
+    public static Result of(Map<AirQualityParameter, Integer> subIndices) {
+        Result result = null;
+        for (AirQualityParameter pollutant : POLLUTANTS) {
+            Integer index = subIndices.get(pollutant);
+            if (index != null && (result == null || index > result.aqi())) {
+                result = new Result(index, pollutant);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets the index of a row from its own pollutant values, or clears it if the row has
+     * none of them.
+     */
+    public static void apply(AirQualityData data) {
+        int aqi = -1;
+        AirQualityParameter dominant = null;
+        for (AirQualityParameter pollutant : POLLUTANTS) {
+            Double value = pollutant.get(data);
+            if (value != null) {
+                int index = subIndex(pollutant, value);
+                if (index > aqi) {
+                    aqi = index;
+                    dominant = pollutant;
+                }
+            }
+        }
+        data.setAqi(dominant == null ? null : aqi);
+        data.setAqiPollutant(dominant == null ? null : dominant.getColumn());
+    }
+}
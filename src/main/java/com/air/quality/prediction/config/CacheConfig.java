@@ -0,0 +1,18 @@
+package com.air.quality.prediction.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Caches are Caffeine caches configured through {@code spring.cache.*}. Their names are
+ * listed in {@code spring.cache.cache-names} so they exist at startup and get
+ * {@code cache.*} metrics.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String DAILY_STATS = "dailyStats";
+    public static final String RECENT_DAILY_STATS = "recentDailyStats";
+    public static final String AVAILABLE_DATES = "availableDates";
+}
@@ -1,25 +1,64 @@
 package com.air.quality.prediction.controller;
 
+import com.air.quality.prediction.dto.DailyAqiDTO;
 import com.air.quality.prediction.dto.DailyStatsDTO;
+import com.air.quality.prediction.dto.IngestionJobDTO;
+import com.air.quality.prediction.dto.MeasurementPageDTO;
+import com.air.quality.prediction.dto.PercentilesDTO;
+import com.air.quality.prediction.dto.RangeStatsDTO;
+import com.air.quality.prediction.dto.SeriesPointDTO;
 import com.air.quality.prediction.model.AirQualityData;
 import com.air.quality.prediction.service.AirQualityService;
+import com.air.quality.prediction.service.AirQualityStreamService;
+import com.air.quality.prediction.service.ColumnarExportService;
+import com.air.quality.prediction.service.DailyQuantileRollup;
+import com.air.quality.prediction.service.DailyStatsRollup;
+import com.air.quality.prediction.service.HourlyStatsRollup;
+import com.air.quality.prediction.service.MeasurementQueryService;
+import com.air.quality.prediction.service.IngestionJobService;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/air-quality")
 public class AirQualityController {
 
+    private static final int MAX_RECENT_DAYS = 366;
+
     private final AirQualityService airQualityService;
+    private final IngestionJobService ingestionJobService;
+    private final AirQualityStreamService airQualityStreamService;
+    private final MeasurementQueryService measurementQueryService;
+    private final ColumnarExportService columnarExportService;
 
     @Autowired
-    public AirQualityController(AirQualityService airQualityService) {
+    public AirQualityController(AirQualityService airQualityService,
+                                IngestionJobService ingestionJobService,
+                                AirQualityStreamService airQualityStreamService,
+                                MeasurementQueryService measurementQueryService,
+                                ColumnarExportService columnarExportService) {
         this.airQualityService = airQualityService;
+        this.ingestionJobService = ingestionJobService;
+        this.airQualityStreamService = airQualityStreamService;
+        this.measurementQueryService = measurementQueryService;
+        this.columnarExportService = columnarExportService;
     }
 
     @GetMapping("/data")
@@ -37,6 +76,113 @@ public class AirQualityController {
         return ResponseEntity.ok(data);
     }
 
+    /**
+     * Rows measured from {@code from} (inclusive) to {@code to} (exclusive), e.g.
+     * {@code from=2024-01-21T08:00:00&to=2024-01-21T10:00:00}, in time order.
+     */
+    @GetMapping("/data/between")
+    public ResponseEntity<?> getDataByTimestampRange(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            return ResponseEntity.badRequest().body("from must be before to");
+        }
+        return ResponseEntity.ok(airQualityService.getDataByTimestampRange(from, to));
+    }
+
+    /**
+     * One page of the range in (date, time, id) order with only the requested fields, e.g.
+     * {@code fields=pm25,pm10}. Pass the returned {@code nextCursor} to get the next page.
+     */
+    @GetMapping("/data/page")
+    public ResponseEntity<?> getDataPage(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) String fields,
+            @RequestParam(defaultValue = "" + MeasurementQueryService.DEFAULT_LIMIT)
+            @Min(1) @Max(MeasurementQueryService.MAX_LIMIT) int limit,
+            @RequestParam(required = false) String cursor) {
+        try {
+            MeasurementPageDTO page = measurementQueryService.getPage(startDate, endDate,
+                    MeasurementQueryService.parseFields(fields), limit, cursor);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Streams the range as a JSON array, or as NDJSON when asked for
+     * {@code application/x-ndjson}, without loading it into memory first.
+     */
+    @GetMapping(value = "/data/range/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamDataByDateRange(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> airQualityStreamService.writeDateRange(startDate, endDate, out, false));
+    }
+
+    @GetMapping(value = "/data/range/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamDataByDateRangeAsNdjson(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> airQualityStreamService.writeDateRange(startDate, endDate, out, true));
+    }
+
+    /**
+     * Exports the range in the compact columnar format, readable with
+     * {@code com.air.quality.prediction.export.ColumnarReader}. The body is gzip-compressed
+     * when the client accepts gzip.
+     */
+    @GetMapping("/data/export")
+    public ResponseEntity<StreamingResponseBody> exportDataByDateRange(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) String fields,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        List<String> selected;
+        try {
+            selected = MeasurementQueryService.resolveFields(MeasurementQueryService.parseFields(fields));
+        } catch (IllegalArgumentException e) {
+            byte[] message = e.getMessage().getBytes(StandardCharsets.UTF_8);
+            return ResponseEntity.badRequest().contentType(MediaType.TEXT_PLAIN).body(out -> out.write(message));
+        }
+        boolean gzip = acceptsGzip(acceptEncoding);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(ColumnarExportService.MEDIA_TYPE))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                GZIPOutputStream compressed = new GZIPOutputStream(out, 64 * 1024);
+                columnarExportService.export(startDate, endDate, selected, compressed);
+                compressed.finish();
+            } else {
+                columnarExportService.export(startDate, endDate, selected, out);
+            }
+        };
+        return response.body(body);
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.toLowerCase(Locale.ROOT).split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equals("gzip")) {
+                return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
     @GetMapping("/stats/daily")
     public ResponseEntity<DailyStatsDTO> getDailyStats(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
@@ -44,6 +190,86 @@ public class AirQualityController {
         return ResponseEntity.ok(stats);
     }
 
+    /**
+     * Count, average, minimum, maximum and standard deviation over a range of days, as a
+     * whole or per {@code day}, {@code week} (from Monday) or {@code month}.
+     */
+    @GetMapping("/stats/range")
+    public ResponseEntity<?> getRangeStats(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = "total") String granularity,
+            @RequestParam(required = false) List<String> parameters) {
+        try {
+            List<RangeStatsDTO> stats = airQualityService.getRangeStats(startDate, endDate,
+                    DailyStatsRollup.Granularity.fromCode(granularity), parameters);
+            return ResponseEntity.ok(stats);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Hourly rolling means of a parameter over a {@code 1h}, {@code 8h} or {@code 24h}
+     * window, each labelled with the last hour of its window.
+     */
+    @GetMapping("/stats/rolling")
+    public ResponseEntity<?> getRollingMeans(
+            @RequestParam String parameter,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = "8h") String window) {
+        try {
+            List<SeriesPointDTO> points = airQualityService.getRollingMeans(parameter, startDate, endDate,
+                    HourlyStatsRollup.Window.fromCode(window));
+            return ResponseEntity.ok(points);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * The air quality index of each day of a range with its dominant pollutant and the
+     * sub-index of each pollutant. Days without pollutant data are left out.
+     */
+    @GetMapping("/stats/aqi")
+    public ResponseEntity<?> getDailyAqi(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        try {
+            List<DailyAqiDTO> days = airQualityService.getDailyAqi(startDate, endDate);
+            return ResponseEntity.ok(days);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * Percentiles over a range of days, merged from per-day sketches, so approximate:
+     * typically within a fraction of a percent of the exact value in rank.
+     */
+    @GetMapping("/stats/percentiles")
+    public ResponseEntity<?> getPercentiles(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) List<String> parameters,
+            @RequestParam(required = false) List<Double> quantiles) {
+        try {
+            PercentilesDTO percentiles = airQualityService.getPercentiles(startDate, endDate,
+                    parameters,
+                    quantiles == null || quantiles.isEmpty() ? DailyQuantileRollup.DEFAULT_QUANTILES : quantiles);
+            return ResponseEntity.ok(percentiles);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @PostMapping("/stats/daily/rebuild")
+    public ResponseEntity<String> rebuildDailyStats() {
+        int rows = airQualityService.rebuildDailyStats();
+        return ResponseEntity.ok("Daily stats rebuilt: " + rows + " rows");
+    }
+
     @GetMapping("/dates")
     public ResponseEntity<List<LocalDate>> getAvailableDates() {
         List<LocalDate> dates = airQualityService.getAvailableDates();
@@ -51,19 +277,34 @@ public class AirQualityController {
     }
 
     @PostMapping("/process-file")
-    public ResponseEntity<String> triggerProcessFile(@RequestParam String filename) {
+    public ResponseEntity<?> triggerProcessFile(@RequestParam String filename) {
         java.io.File file = new java.io.File(filename);
-        if (file.exists() && file.isFile()) {
-            airQualityService.processCsvFile(file);
-            return ResponseEntity.ok("File processing started for: " + filename);
-        } else {
+        if (!file.exists() || !file.isFile()) {
             return ResponseEntity.badRequest().body("File not found: " + filename);
         }
+        try {
+            IngestionJobDTO job = ingestionJobService.submit(file);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/air-quality/jobs/" + job.getId()))
+                    .body(job);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "30")
+                    .body("Too many files queued for processing, try again later");
+        }
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<IngestionJobDTO> getJob(@PathVariable String id) {
+        return ingestionJobService.getJob(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
     }
 
     @GetMapping("/stats/daily/recent")
-    public ResponseEntity<List<DailyStatsDTO>> getRecentDailyStats() {
-        List<DailyStatsDTO> statsList = airQualityService.getRecentDailyStats(5);
+    public ResponseEntity<List<DailyStatsDTO>> getRecentDailyStats(
+            @RequestParam(defaultValue = "5") @Min(1) @Max(MAX_RECENT_DAYS) int days) {
+        List<DailyStatsDTO> statsList = airQualityService.getRecentDailyStats(days);
         return ResponseEntity.ok(statsList);
     }
 
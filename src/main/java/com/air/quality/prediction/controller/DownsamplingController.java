@@ -0,0 +1,62 @@
+package com.air.quality.prediction.controller;
+
+import com.air.quality.prediction.dto.SeriesPointDTO;
+import com.air.quality.prediction.service.DownsamplingService;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Chart-sized views of a single pollutant over a date range.
+ */
+@RestController
+@RequestMapping("/api/air-quality/downsample")
+public class DownsamplingController {
+
+    private final DownsamplingService downsamplingService;
+
+    @Autowired
+    public DownsamplingController(DownsamplingService downsamplingService) {
+        this.downsamplingService = downsamplingService;
+    }
+
+    /**
+     * Average, minimum and maximum per fixed bucket: {@code 1m}, {@code 15m}, {@code 1h} or {@code 1d}.
+     */
+    @GetMapping("/buckets")
+    public ResponseEntity<?> getBuckets(
+            @RequestParam String parameter,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = "1h") String bucket) {
+        try {
+            List<SeriesPointDTO> points = downsamplingService.getBuckets(parameter, startDate, endDate,
+                    DownsamplingService.Bucket.fromCode(bucket));
+            return ResponseEntity.ok(points);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * At most {@code points} points that keep the shape of the series (LTTB).
+     */
+    @GetMapping("/points")
+    public ResponseEntity<?> getPointBudget(
+            @RequestParam String parameter,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(defaultValue = "500") @Min(3) @Max(DownsamplingService.MAX_POINTS) int points) {
+        try {
+            return ResponseEntity.ok(downsamplingService.getPointBudget(parameter, startDate, endDate, points));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.air.quality.prediction.dto;
+
+import com.air.quality.prediction.model.AirQualityParameter;
+import java.time.LocalDate;
+import java.util.Map;
+
+public class DailyAqiDTO {
+    private LocalDate date;
+    private int aqi;
+    private AirQualityParameter pollutant;
+    private Map<AirQualityParameter, Integer> subIndices;
+
+    public DailyAqiDTO() {
+    }
+
+    public DailyAqiDTO(LocalDate date, int aqi, AirQualityParameter pollutant,
+                       Map<AirQualityParameter, Integer> subIndices) {
+        this.date = date;
+        this.aqi = aqi;
+        this.pollutant = pollutant;
+        this.subIndices = subIndices;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public void setDate(LocalDate date) {
+        this.date = date;
+    }
+
+    public int getAqi() {
+        return aqi;
+    }
+
+    public void setAqi(int aqi) {
+        this.aqi = aqi;
+    }
+
+    public AirQualityParameter getPollutant() {
+        return pollutant;
+    }
+
+    public void setPollutant(AirQualityParameter pollutant) {
+        this.pollutant = pollutant;
+    }
+
+    public Map<AirQualityParameter, Integer> getSubIndices() {
+        return subIndices;
+    }
+
+    public void setSubIndices(Map<AirQualityParameter, Integer> subIndices) {
+        this.subIndices = subIndices;
+    }
+}
@@ -1,19 +1,36 @@
 package com.air.quality.prediction.dto;
 
+import com.air.quality.prediction.model.AirQualityParameter;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.time.LocalDate;
+import java.util.EnumMap;
 import java.util.Map;
 
 public class DailyStatsDTO {
     private LocalDate date;
-    private Map<String, Double> averages;
-    private Map<String, Double> minimums;
-    private Map<String, Double> maximums;
+    private Map<AirQualityParameter, Double> averages;
+    private Map<AirQualityParameter, Double> minimums;
+    private Map<AirQualityParameter, Double> maximums;
+    // p50, p95 and p99 per parameter; left out when no day sketches are available.
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<AirQualityParameter, Map<String, Double>> percentiles;
+    // The day's air quality index and the pollutant it comes from; left out for days without one.
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer aqi;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private AirQualityParameter aqiPollutant;
 
     public DailyStatsDTO() {
     }
 
-    public DailyStatsDTO(LocalDate date, Map<String, Double> averages,
-                         Map<String, Double> minimums, Map<String, Double> maximums) {
+    public DailyStatsDTO(LocalDate date) {
+        this(date, new EnumMap<>(AirQualityParameter.class), new EnumMap<>(AirQualityParameter.class),
+                new EnumMap<>(AirQualityParameter.class));
+    }
+
+    public DailyStatsDTO(LocalDate date, Map<AirQualityParameter, Double> averages,
+                         Map<AirQualityParameter, Double> minimums, Map<AirQualityParameter, Double> maximums) {
         this.date = date;
         this.averages = averages;
         this.minimums = minimums;
@@ -28,27 +45,51 @@ public class DailyStatsDTO {
         this.date = date;
     }
 
-    public Map<String, Double> getAverages() {
+    public Map<AirQualityParameter, Double> getAverages() {
         return averages;
     }
 
-    public void setAverages(Map<String, Double> averages) {
+    public void setAverages(Map<AirQualityParameter, Double> averages) {
         this.averages = averages;
     }
 
-    public Map<String, Double> getMinimums() {
+    public Map<AirQualityParameter, Double> getMinimums() {
         return minimums;
     }
 
-    public void setMinimums(Map<String, Double> minimums) {
+    public void setMinimums(Map<AirQualityParameter, Double> minimums) {
         this.minimums = minimums;
     }
 
-    public Map<String, Double> getMaximums() {
+    public Map<AirQualityParameter, Double> getMaximums() {
         return maximums;
     }
 
-    public void setMaximums(Map<String, Double> maximums) {
+    public void setMaximums(Map<AirQualityParameter, Double> maximums) {
         this.maximums = maximums;
     }
+
+    public Map<AirQualityParameter, Map<String, Double>> getPercentiles() {
+        return percentiles;
+    }
+
+    public void setPercentiles(Map<AirQualityParameter, Map<String, Double>> percentiles) {
+        this.percentiles = percentiles;
+    }
+
+    public Integer getAqi() {
+        return aqi;
+    }
+
+    public void setAqi(Integer aqi) {
+        this.aqi = aqi;
+    }
+
+    public AirQualityParameter getAqiPollutant() {
+        return aqiPollutant;
+    }
+
+    public void setAqiPollutant(AirQualityParameter aqiPollutant) {
+        this.aqiPollutant = aqiPollutant;
+    }
 }
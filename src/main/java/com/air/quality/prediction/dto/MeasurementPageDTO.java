@@ -0,0 +1,33 @@
+package com.air.quality.prediction.dto;
+
+import java.util.List;
+import java.util.Map;
+
+public class MeasurementPageDTO {
+    private List<Map<String, Object>> items;
+    private String nextCursor;
+
+    public MeasurementPageDTO() {
+    }
+
+    public MeasurementPageDTO(List<Map<String, Object>> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Map<String, Object>> getItems() {
+        return items;
+    }
+
+    public void setItems(List<Map<String, Object>> items) {
+        this.items = items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
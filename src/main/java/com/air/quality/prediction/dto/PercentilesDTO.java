@@ -0,0 +1,55 @@
+package com.air.quality.prediction.dto;
+
+import com.air.quality.prediction.model.AirQualityParameter;
+import java.time.LocalDate;
+import java.util.Map;
+
+public class PercentilesDTO {
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private Map<AirQualityParameter, Long> counts;
+    private Map<AirQualityParameter, Map<String, Double>> percentiles;
+
+    public PercentilesDTO() {
+    }
+
+    public PercentilesDTO(LocalDate startDate, LocalDate endDate, Map<AirQualityParameter, Long> counts,
+                          Map<AirQualityParameter, Map<String, Double>> percentiles) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.counts = counts;
+        this.percentiles = percentiles;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(LocalDate startDate) {
+        this.startDate = startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(LocalDate endDate) {
+        this.endDate = endDate;
+    }
+
+    public Map<AirQualityParameter, Long> getCounts() {
+        return counts;
+    }
+
+    public void setCounts(Map<AirQualityParameter, Long> counts) {
+        this.counts = counts;
+    }
+
+    public Map<AirQualityParameter, Map<String, Double>> getPercentiles() {
+        return percentiles;
+    }
+
+    public void setPercentiles(Map<AirQualityParameter, Map<String, Double>> percentiles) {
+        this.percentiles = percentiles;
+    }
+}
@@ -0,0 +1,93 @@
+package com.air.quality.prediction.dto;
+
+import com.air.quality.prediction.model.AirQualityParameter;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Map;
+
+public class RangeStatsDTO {
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private Map<AirQualityParameter, Long> counts;
+    private Map<AirQualityParameter, Double> averages;
+    private Map<AirQualityParameter, Double> minimums;
+    private Map<AirQualityParameter, Double> maximums;
+    private Map<AirQualityParameter, Double> standardDeviations;
+
+    public RangeStatsDTO() {
+    }
+
+    public RangeStatsDTO(LocalDate startDate, LocalDate endDate) {
+        this(startDate, endDate, new EnumMap<>(AirQualityParameter.class), new EnumMap<>(AirQualityParameter.class),
+                new EnumMap<>(AirQualityParameter.class), new EnumMap<>(AirQualityParameter.class),
+                new EnumMap<>(AirQualityParameter.class));
+    }
+
+    public RangeStatsDTO(LocalDate startDate, LocalDate endDate, Map<AirQualityParameter, Long> counts,
+                         Map<AirQualityParameter, Double> averages, Map<AirQualityParameter, Double> minimums,
+                         Map<AirQualityParameter, Double> maximums, Map<AirQualityParameter, Double> standardDeviations) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.counts = counts;
+        this.averages = averages;
+        this.minimums = minimums;
+        this.maximums = maximums;
+        this.standardDeviations = standardDeviations;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(LocalDate startDate) {
+        this.startDate = startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(LocalDate endDate) {
+        this.endDate = endDate;
+    }
+
+    public Map<AirQualityParameter, Long> getCounts() {
+        return counts;
+    }
+
+    public void setCounts(Map<AirQualityParameter, Long> counts) {
+        this.counts = counts;
+    }
+
+    public Map<AirQualityParameter, Double> getAverages() {
+        return averages;
+    }
+
+    public void setAverages(Map<AirQualityParameter, Double> averages) {
+        this.averages = averages;
+    }
+
+    public Map<AirQualityParameter, Double> getMinimums() {
+        return minimums;
+    }
+
+    public void setMinimums(Map<AirQualityParameter, Double> minimums) {
+        this.minimums = minimums;
+    }
+
+    public Map<AirQualityParameter, Double> getMaximums() {
+        return maximums;
+    }
+
+    public void setMaximums(Map<AirQualityParameter, Double> maximums) {
+        this.maximums = maximums;
+    }
+
+    public Map<AirQualityParameter, Double> getStandardDeviations() {
+        return standardDeviations;
+    }
+
+    public void setStandardDeviations(Map<AirQualityParameter, Double> standardDeviations) {
+        this.standardDeviations = standardDeviations;
+    }
+}
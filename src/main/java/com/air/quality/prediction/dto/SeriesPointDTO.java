@@ -0,0 +1,80 @@
+package com.air.quality.prediction.dto;
+
+import java.time.LocalDateTime;
+
+public class SeriesPointDTO {
+    private LocalDateTime time;
+    private Long count;
+    private Double avg;
+    private Double min;
+    private Double max;
+    private Double value;
+
+    public SeriesPointDTO() {
+    }
+
+    public static SeriesPointDTO bucket(LocalDateTime time, long count, double avg, double min, double max) {
+        SeriesPointDTO point = new SeriesPointDTO();
+        point.setTime(time);
+        point.setCount(count);
+        point.setAvg(avg);
+        point.setMin(min);
+        point.setMax(max);
+        return point;
+    }
+
+    public static SeriesPointDTO point(LocalDateTime time, double value) {
+        SeriesPointDTO point = new SeriesPointDTO();
+        point.setTime(time);
+        point.setValue(value);
+        return point;
+    }
+
+    public LocalDateTime getTime() {
+        return time;
+    }
+
+    public void setTime(LocalDateTime time) {
+        this.time = time;
+    }
+
+    public Long getCount() {
+        return count;
+    }
+
+    public void setCount(Long count) {
+        this.count = count;
+    }
+
+    public Double getAvg() {
+        return avg;
+    }
+
+    public void setAvg(Double avg) {
+        this.avg = avg;
+    }
+
+    public Double getMin() {
+        return min;
+    }
+
+    public void setMin(Double min) {
+        this.min = min;
+    }
+
+    public Double getMax() {
+        return max;
+    }
+
+    public void setMax(Double max) {
+        this.max = max;
+    }
+
+    public Double getValue() {
+        return value;
+    }
+
+    public void setValue(Double value) {
+        this.value = value;
+    }
+}
@@ -0,0 +1,106 @@
+package com.air.quality.prediction.export;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Constants and primitives of the columnar export format written by
+ * {@link ColumnarWriter} and read by {@link ColumnarReader}.
+ * <pre>
+ * file    = header block* end
+ * header  = "AQCF" version:u8 columnCount:varint column*
+ * column  = type:u8 (0 double, 1 text) name:string
+ * block   = rowCount:varint(&gt; 0) ids timestamps data*   one data section per column
+ * end     = rowCount:varint(0)
+ *
+ * ids        zigzag varint delta from the previous id
+ * timestamps local date and time as microseconds since 1970-01-01T00:00, zigzag varint
+ *            delta of the delta from the previous row, so a fixed interval costs one byte
+ * double     presence bitmap of ceil(rowCount / 8) bytes, least significant bit first,
+ *            then an encoding byte and the present values:
+ *            1 + k  decimal: every value of the block is exactly n / 10^k, as sensor
+ *                   readings with k decimal places are; n is written as a zigzag varint
+ *                   delta from the previous n
+ *            0      XOR: each value XORed with the previous one as a control byte
+ *                   (leading zero bytes &lt;&lt; 4 | trailing zero bytes) followed by the
+ *                   remaining bytes, most significant first; an unchanged value is the
+ *                   single control byte 0x80
+ * text       one varint per row: 0 for null, otherwise 1 + the index of the value among
+ *            the distinct values of the block; a value's first occurrence is followed by
+ *            the value itself
+ * string     varint byte length, UTF-8 bytes
+ * </pre>
+ * Every "previous" starts from zero at the beginning of a block, so each block decodes on
+ * its own.
+ */
+final class ColumnarFormat {
+
+    static final byte[] MAGIC = {'A', 'Q', 'C', 'F'};
+    static final int VERSION = 1;
+    static final int TYPE_DOUBLE = 0;
+    static final int TYPE_TEXT = 1;
+    static final int ENCODING_XOR = 0;
+    static final int UNCHANGED = 0x80;
+
+    // Decimal encoding is tried up to this many decimal places.
+    static final int MAX_SCALE = 6;
+    static final double[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000};
+
+    private ColumnarFormat() {
+    }
+
+    static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static void writeZigzag(OutputStream out, long value) throws IOException {
+        writeVarint(out, (value << 1) ^ (value >> 63));
+    }
+
+    static void writeString(OutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException("Truncated columnar export");
+        }
+        return b;
+    }
+
+    static long readVarint(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte(in);
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in columnar export");
+    }
+
+    static long readZigzag(InputStream in) throws IOException {
+        long value = readVarint(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static String readString(InputStream in) throws IOException {
+        int length = Math.toIntExact(readVarint(in));
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length < length) {
+            throw new EOFException("Truncated columnar export");
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,229 @@
+package com.air.quality.prediction.export;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the columnar export format, e.g. the body of {@code /api/air-quality/data/export}
+ * (after gzip decoding if it was compressed), a row at a time.
+ * <pre>
+ * try (ColumnarReader reader = new ColumnarReader(in)) {
+ *     int pm25 = reader.columnIndex("pm25");
+ *     while (reader.next()) {
+ *         LocalDateTime at = reader.getTimestamp();
+ *         double value = reader.getDouble(pm25);   // NaN if null
+ *     }
+ * }
+ * </pre>
+ * Only the current block is held in memory.
+ */
+public class ColumnarReader implements Closeable {
+
+    private final InputStream in;
+    private final List<ColumnarWriter.Column> columns = new ArrayList<>();
+
+    private long[] ids = new long[0];
+    private long[] timestamps = new long[0];
+    private double[][] doubles;
+    private String[][] texts;
+    private int blockRows;
+    private int row = -1;
+    private boolean ended;
+
+    public ColumnarReader(InputStream in) throws IOException {
+        this.in = new BufferedInputStream(in, 64 * 1024);
+        readHeader();
+        doubles = new double[columns.size()][];
+        texts = new String[columns.size()][];
+    }
+
+    private void readHeader() throws IOException {
+        byte[] magic = in.readNBytes(ColumnarFormat.MAGIC.length);
+        if (!Arrays.equals(magic, ColumnarFormat.MAGIC)) {
+            throw new IOException("Not a columnar export");
+        }
+        int version = ColumnarFormat.readByte(in);
+        if (version != ColumnarFormat.VERSION) {
+            throw new IOException("Unsupported columnar export version " + version);
+        }
+        int count = Math.toIntExact(ColumnarFormat.readVarint(in));
+        for (int c = 0; c < count; c++) {
+            int type = ColumnarFormat.readByte(in);
+            String name = ColumnarFormat.readString(in);
+            columns.add(new ColumnarWriter.Column(name, switch (type) {
+                case ColumnarFormat.TYPE_DOUBLE -> ColumnarWriter.ColumnType.DOUBLE;
+                case ColumnarFormat.TYPE_TEXT -> ColumnarWriter.ColumnType.TEXT;
+                default -> throw new IOException("Unknown column type " + type);
+            }));
+        }
+    }
+
+    public List<ColumnarWriter.Column> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the index of the named column, or -1 if the export does not have it
+     */
+    public int columnIndex(String name) {
+        for (int c = 0; c < columns.size(); c++) {
+            if (columns.get(c).name().equals(name)) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Moves to the next row.
+     *
+     * @return false once all rows have been read
+     */
+    public boolean next() throws IOException {
+        if (row + 1 < blockRows) {
+            row++;
+            return true;
+        }
+        if (ended) {
+            return false;
+        }
+        blockRows = Math.toIntExact(ColumnarFormat.readVarint(in));
+        if (blockRows == 0) {
+            ended = true;
+            return false;
+        }
+        readBlock();
+        row = 0;
+        return true;
+    }
+
+    public long getId() {
+        return ids[row];
+    }
+
+    public LocalDateTime getTimestamp() {
+        long micros = timestamps[row];
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                (int) Math.floorMod(micros, 1_000_000) * 1000, ZoneOffset.UTC);
+    }
+
+    /**
+     * @return the value of a double column, {@code NaN} if it is null
+     */
+    public double getDouble(int column) {
+        return doubles[column][row];
+    }
+
+    public String getText(int column) {
+        return texts[column][row];
+    }
+
+    private void readBlock() throws IOException {
+        if (ids.length < blockRows) {
+            ids = new long[blockRows];
+            timestamps = new long[blockRows];
+        }
+
+        long previousId = 0;
+        for (int i = 0; i < blockRows; i++) {
+            previousId += ColumnarFormat.readZigzag(in);
+            ids[i] = previousId;
+        }
+
+        long previous = 0;
+        long previousDelta = 0;
+        for (int i = 0; i < blockRows; i++) {
+            previousDelta += ColumnarFormat.readZigzag(in);
+            previous += previousDelta;
+            timestamps[i] = previous;
+        }
+
+        for (int c = 0; c < columns.size(); c++) {
+            if (columns.get(c).type() == ColumnarWriter.ColumnType.DOUBLE) {
+                readDoubles(c);
+            } else {
+                readTexts(c);
+            }
+        }
+    }
+
+    private void readDoubles(int column) throws IOException {
+        if (doubles[column] == null || doubles[column].length < blockRows) {
+            doubles[column] = new double[blockRows];
+        }
+        double[] values = doubles[column];
+        byte[] bitmap = in.readNBytes((blockRows + 7) / 8);
+        if (bitmap.length < (blockRows + 7) / 8) {
+            throw new IOException("Truncated columnar export");
+        }
+        int encoding = ColumnarFormat.readByte(in);
+        if (encoding != ColumnarFormat.ENCODING_XOR) {
+            int scale = encoding - 1;
+            if (scale > ColumnarFormat.MAX_SCALE) {
+                throw new IOException("Unknown double encoding " + encoding);
+            }
+            double factor = ColumnarFormat.POWERS_OF_TEN[scale];
+            long previous = 0;
+            for (int i = 0; i < blockRows; i++) {
+                if ((bitmap[i >> 3] & (1 << (i & 7))) == 0) {
+                    values[i] = Double.NaN;
+                } else {
+                    previous += ColumnarFormat.readZigzag(in);
+                    values[i] = previous / factor;
+                }
+            }
+            return;
+        }
+
+        long previous = 0;
+        for (int i = 0; i < blockRows; i++) {
+            if ((bitmap[i >> 3] & (1 << (i & 7))) == 0) {
+                values[i] = Double.NaN;
+                continue;
+            }
+            int control = ColumnarFormat.readByte(in);
+            long xor = 0;
+            if (control != ColumnarFormat.UNCHANGED) {
+                int leading = control >> 4;
+                int trailing = control & 0x0F;
+                for (int shift = (7 - leading) * 8; shift >= trailing * 8; shift -= 8) {
+                    xor |= (long) ColumnarFormat.readByte(in) << shift;
+                }
+            }
+            previous ^= xor;
+            values[i] = Double.longBitsToDouble(previous);
+        }
+    }
+
+    private void readTexts(int column) throws IOException {
+        if (texts[column] == null || texts[column].length < blockRows) {
+            texts[column] = new String[blockRows];
+        }
+        String[] values = texts[column];
+        List<String> dictionary = new ArrayList<>();
+        for (int i = 0; i < blockRows; i++) {
+            int index = Math.toIntExact(ColumnarFormat.readVarint(in));
+            if (index == 0) {
+                values[i] = null;
+            } else if (index - 1 == dictionary.size()) {
+                String value = ColumnarFormat.readString(in);
+                dictionary.add(value);
+                values[i] = value;
+            } else {
+                values[i] = dictionary.get(index - 1);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,260 @@
+package com.air.quality.prediction.export;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes measurements in the columnar export format described in {@link ColumnarFormat}.
+ * <p>
+ * Rows are buffered column by column and encoded a block at a time. Values not set for a
+ * row are null.
+ * <pre>
+ * writer.startRow(id, timestamp);
+ * writer.setDouble(0, pm25);
+ * writer.setText(1, sourceFile);
+ * writer.endRow();
+ * ...
+ * writer.finish();
+ * </pre>
+ */
+public class ColumnarWriter {
+
+    public enum ColumnType {
+        DOUBLE, TEXT
+    }
+
+    public record Column(String name, ColumnType type) {
+    }
+
+    public static final int DEFAULT_BLOCK_ROWS = 8192;
+
+    private final OutputStream out;
+    private final List<Column> columns;
+    private final int blockRows;
+
+    private final long[] ids;
+    private final long[] timestamps;
+    private final double[][] doubles;
+    private final String[][] texts;
+    private final boolean[][] present;
+    private int rows;
+    private boolean finished;
+
+    /**
+     * Writes the header right away; the output is not closed by {@link #finish()}.
+     */
+    public ColumnarWriter(OutputStream out, List<Column> columns) throws IOException {
+        this(out, columns, DEFAULT_BLOCK_ROWS);
+    }
+
+    public ColumnarWriter(OutputStream out, List<Column> columns, int blockRows) throws IOException {
+        this.out = new BufferedOutputStream(out, 64 * 1024);
+        this.columns = List.copyOf(columns);
+        this.blockRows = blockRows;
+        this.ids = new long[blockRows];
+        this.timestamps = new long[blockRows];
+        this.doubles = new double[columns.size()][];
+        this.texts = new String[columns.size()][];
+        this.present = new boolean[columns.size()][blockRows];
+        for (int c = 0; c < columns.size(); c++) {
+            if (columns.get(c).type() == ColumnType.DOUBLE) {
+                doubles[c] = new double[blockRows];
+            } else {
+                texts[c] = new String[blockRows];
+            }
+        }
+        writeHeader();
+    }
+
+    private void writeHeader() throws IOException {
+        out.write(ColumnarFormat.MAGIC);
+        out.write(ColumnarFormat.VERSION);
+        ColumnarFormat.writeVarint(out, columns.size());
+        for (Column column : columns) {
+            out.write(column.type() == ColumnType.DOUBLE ? ColumnarFormat.TYPE_DOUBLE : ColumnarFormat.TYPE_TEXT);
+            ColumnarFormat.writeString(out, column.name());
+        }
+    }
+
+    public void startRow(long id, LocalDateTime timestamp) {
+        ids[rows] = id;
+        timestamps[rows] = toMicros(timestamp);
+    }
+
+    public void setDouble(int column, double value) {
+        doubles[column][rows] = value;
+        present[column][rows] = true;
+    }
+
+    public void setText(int column, String value) {
+        if (value != null) {
+            texts[column][rows] = value;
+            present[column][rows] = true;
+        }
+    }
+
+    public void endRow() throws IOException {
+        rows++;
+        if (rows == blockRows) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Writes the last block and the end marker, and flushes.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        writeBlock();
+        ColumnarFormat.writeVarint(out, 0);
+        out.flush();
+        finished = true;
+    }
+
+    /**
+     * Encodes the buffered rows and flushes them to the output.
+     */
+    private void writeBlock() throws IOException {
+        if (rows == 0) {
+            return;
+        }
+        ColumnarFormat.writeVarint(out, rows);
+
+        long previousId = 0;
+        for (int i = 0; i < rows; i++) {
+            ColumnarFormat.writeZigzag(out, ids[i] - previousId);
+            previousId = ids[i];
+        }
+
+        long previous = 0;
+        long previousDelta = 0;
+        for (int i = 0; i < rows; i++) {
+            long delta = timestamps[i] - previous;
+            ColumnarFormat.writeZigzag(out, delta - previousDelta);
+            previous = timestamps[i];
+            previousDelta = delta;
+        }
+
+        for (int c = 0; c < columns.size(); c++) {
+            if (doubles[c] != null) {
+                writeDoubles(c);
+            } else {
+                writeTexts(c);
+            }
+            Arrays.fill(present[c], 0, rows, false);
+            if (texts[c] != null) {
+                Arrays.fill(texts[c], 0, rows, null);
+            }
+        }
+        rows = 0;
+        out.flush();
+    }
+
+    private void writeDoubles(int column) throws IOException {
+        boolean[] isPresent = present[column];
+        byte[] bitmap = new byte[(rows + 7) / 8];
+        for (int i = 0; i < rows; i++) {
+            if (isPresent[i]) {
+                bitmap[i >> 3] |= (byte) (1 << (i & 7));
+            }
+        }
+        out.write(bitmap);
+
+        double[] values = doubles[column];
+        int scale = decimalScale(values, isPresent);
+        if (scale >= 0) {
+            out.write(1 + scale);
+            double factor = ColumnarFormat.POWERS_OF_TEN[scale];
+            long previous = 0;
+            for (int i = 0; i < rows; i++) {
+                if (isPresent[i]) {
+                    long scaled = (long) Math.rint(values[i] * factor);
+                    ColumnarFormat.writeZigzag(out, scaled - previous);
+                    previous = scaled;
+                }
+            }
+            return;
+        }
+
+        out.write(ColumnarFormat.ENCODING_XOR);
+        long previous = 0;
+        for (int i = 0; i < rows; i++) {
+            if (!isPresent[i]) {
+                continue;
+            }
+            long bits = Double.doubleToRawLongBits(values[i]);
+            long xor = bits ^ previous;
+            previous = bits;
+            if (xor == 0) {
+                out.write(ColumnarFormat.UNCHANGED);
+                continue;
+            }
+            int leading = Long.numberOfLeadingZeros(xor) / 8;
+            int trailing = Long.numberOfTrailingZeros(xor) / 8;
+            out.write(leading << 4 | trailing);
+            for (int shift = (7 - leading) * 8; shift >= trailing * 8; shift -= 8) {
+                out.write((int) (xor >>> shift));
+            }
+        }
+    }
+
+    /**
+     * The fewest decimal places k with which every present value is decoded back exactly
+     * from its scaled integer, or -1 if there is none up to {@link ColumnarFormat#MAX_SCALE}.
+     */
+    private int decimalScale(double[] values, boolean[] isPresent) {
+        int scale = 0;
+        for (int i = 0; i < rows; i++) {
+            if (!isPresent[i]) {
+                continue;
+            }
+            while (!decodesExactly(values[i], scale)) {
+                if (++scale > ColumnarFormat.MAX_SCALE) {
+                    return -1;
+                }
+            }
+        }
+        return scale;
+    }
+
+    private static boolean decodesExactly(double value, int scale) {
+        double factor = ColumnarFormat.POWERS_OF_TEN[scale];
+        double scaled = Math.rint(value * factor);
+        return Math.abs(scaled) < 0x1p53
+                && Double.doubleToRawLongBits((long) scaled / factor) == Double.doubleToRawLongBits(value);
+    }
+
+    private void writeTexts(int column) throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        String[] values = texts[column];
+        for (int i = 0; i < rows; i++) {
+            String value = values[i];
+            if (value == null) {
+                ColumnarFormat.writeVarint(out, 0);
+                continue;
+            }
+            Integer index = dictionary.get(value);
+            if (index != null) {
+                ColumnarFormat.writeVarint(out, index + 1);
+            } else {
+                int added = dictionary.size();
+                dictionary.put(value, added);
+                ColumnarFormat.writeVarint(out, added + 1);
+                ColumnarFormat.writeString(out, value);
+            }
+        }
+    }
+
+    static long toMicros(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + timestamp.getNano() / 1000;
+    }
+}
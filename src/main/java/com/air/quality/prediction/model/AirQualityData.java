@@ -1,6 +1,8 @@
 package com.air.quality.prediction.model;
 
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
@@ -8,6 +10,7 @@ import jakarta.persistence.Id;
 import jakarta.persistence.Table;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
 
 @Entity
@@ -20,6 +23,12 @@ public class AirQualityData {
 
     private LocalDate date;
     private LocalTime time;
+
+    // date + time, computed by the database. Left out of JSON, which already has both.
+    @JsonIgnore
+    @Column(name = "measured_at", insertable = false, updatable = false)
+    private LocalDateTime measuredAt;
+
     private Double pm25;
     private Double pm10;
     private Double iaq;
@@ -49,6 +58,10 @@ public class AirQualityData {
 
     private String sourceFile;
 
+    // Set from the row's own pollutant values by AqiCalculator.
+    private Integer aqi;
+    private String aqiPollutant;
+
     public AirQualityData() {
     }
 
@@ -291,4 +304,28 @@ public class AirQualityData {
     public void setSourceFile(String sourceFile) {
         this.sourceFile = sourceFile;
     }
+
+    public Integer getAqi() {
+        return aqi;
+    }
+
+    public void setAqi(Integer aqi) {
+        this.aqi = aqi;
+    }
+
+    public String getAqiPollutant() {
+        return aqiPollutant;
+    }
+
+    public void setAqiPollutant(String aqiPollutant) {
+        this.aqiPollutant = aqiPollutant;
+    }
+
+    public LocalDateTime getMeasuredAt() {
+        return measuredAt;
+    }
+
+    public void setMeasuredAt(LocalDateTime measuredAt) {
+        this.measuredAt = measuredAt;
+    }
 }
\ No newline at end of file
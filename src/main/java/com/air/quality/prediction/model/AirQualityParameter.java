@@ -0,0 +1,112 @@
+package com.air.quality.prediction.model;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * The numeric channels of a measurement, in CSV order. Each one defines its CSV field, its
+ * column in {@code air_quality_data} (also its JSON name) and whether it is summarised in
+ * the daily rollups. The CSV mapping, bulk loading, rollups and stats all iterate over
+ * this enum, so a new channel is one constant here plus its column and entity field.
+ * <p>
+ * Position and motion channels are not summarised.
+ */
+public enum AirQualityParameter {
+    PM25("pm25", 2, true, AirQualityData::getPm25, AirQualityData::setPm25),
+    PM10("pm10", 3, true, AirQualityData::getPm10, AirQualityData::setPm10),
+    IAQ("iaq", 4, true, AirQualityData::getIaq, AirQualityData::setIaq),
+    HCHO("hcho", 5, true, AirQualityData::getHcho, AirQualityData::setHcho),
+    CO2("co2", 6, true, AirQualityData::getCo2, AirQualityData::setCo2),
+    P("p", 7, true, AirQualityData::getP, AirQualityData::setP),
+    TIN("tin", 8, true, AirQualityData::getTin, AirQualityData::setTin),
+    TOUT("tout", 9, true, AirQualityData::getTout, AirQualityData::setTout),
+    RHIN("rhin", 10, true, AirQualityData::getRhin, AirQualityData::setRhin),
+    RHOUT("rhout", 11, true, AirQualityData::getRhout, AirQualityData::setRhout),
+    LAT("lat", 12, false, AirQualityData::getLat, AirQualityData::setLat),
+    LON("lon", 13, false, AirQualityData::getLon, AirQualityData::setLon),
+    HDG("hdg", 14, false, AirQualityData::getHdg, AirQualityData::setHdg),
+    AMSL("amsl", 15, false, AirQualityData::getAmsl, AirQualityData::setAmsl),
+    AGL("agl", 16, false, AirQualityData::getAgl, AirQualityData::setAgl),
+    MIL("mil", 17, false, AirQualityData::getMil, AirQualityData::setMil),
+    NO2("no2", 18, true, AirQualityData::getNo2, AirQualityData::setNo2),
+    NO("no", 19, true, AirQualityData::getNo, AirQualityData::setNo),
+    SO2("so2", 20, true, AirQualityData::getSo2, AirQualityData::setSo2),
+    H2S("h2s", 21, true, AirQualityData::getH2s, AirQualityData::setH2s),
+    CO("co", 22, true, AirQualityData::getCo, AirQualityData::setCo),
+    HCN("hcn", 23, true, AirQualityData::getHcn, AirQualityData::setHcn),
+    HCL("hcl", 24, true, AirQualityData::getHcl, AirQualityData::setHcl),
+    NH3("nh3", 25, true, AirQualityData::getNh3, AirQualityData::setNh3),
+    EC("ec", 26, true, AirQualityData::getEc, AirQualityData::setEc);
+
+    /**
+     * The parameters kept in {@code daily_stats} and {@code daily_sketch}.
+     */
+    public static final List<AirQualityParameter> SUMMARISED =
+            Arrays.stream(values()).filter(AirQualityParameter::isSummarised).toList();
+
+    private static final List<AirQualityParameter> ALL = List.of(values());
+
+    private static final Map<String, AirQualityParameter> BY_COLUMN = new HashMap<>();
+
+    static {
+        for (AirQualityParameter parameter : ALL) {
+            BY_COLUMN.put(parameter.column, parameter);
+        }
+    }
+
+    private final String column;
+    private final int csvIndex;
+    private final boolean summarised;
+    private final Function<AirQualityData, Double> getter;
+    private final BiConsumer<AirQualityData, Double> setter;
+
+    AirQualityParameter(String column, int csvIndex, boolean summarised,
+                        Function<AirQualityData, Double> getter, BiConsumer<AirQualityData, Double> setter) {
+        this.column = column;
+        this.csvIndex = csvIndex;
+        this.summarised = summarised;
+        this.getter = getter;
+        this.setter = setter;
+    }
+
+    /**
+     * Every parameter, in CSV order, without the copy {@link #values()} makes.
+     */
+    public static List<AirQualityParameter> all() {
+        return ALL;
+    }
+
+    /**
+     * The parameter stored in {@code column}, or {@code null} if there is none.
+     */
+    public static AirQualityParameter fromColumn(String column) {
+        return BY_COLUMN.get(column);
+    }
+
+    @JsonValue
+    public String getColumn() {
+        return column;
+    }
+
+    public int getCsvIndex() {
+        return csvIndex;
+    }
+
+    public boolean isSummarised() {
+        return summarised;
+    }
+
+    public Double get(AirQualityData data) {
+        return getter.apply(data);
+    }
+
+    public void set(AirQualityData data, Double value) {
+        setter.accept(data, value);
+    }
+}
@@ -0,0 +1,147 @@
+package com.air.quality.prediction.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.LocalDateTime;
+
+/**
+ * Ledger entry for one CSV file. {@code lastCommittedOffset} is the number of CSV records
+ * (after the header) covered by committed chunks, so an interrupted file can resume there.
+ */
+@Entity
+@Table(name = "ingested_file")
+public class IngestedFile {
+
+    public enum Status {
+        IN_PROGRESS, COMPLETED, FAILED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String filename;
+    private Long sizeBytes;
+    private Long lastModified;
+    private String contentHash;
+    private long rowsRead;
+    private long rowsSaved;
+    private long rowsRejected;
+    private long lastCommittedOffset;
+
+    @Enumerated(EnumType.STRING)
+    private Status status;
+
+    private LocalDateTime startedAt;
+    private LocalDateTime completedAt;
+
+    public IngestedFile() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public Long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public void setSizeBytes(Long sizeBytes) {
+        this.sizeBytes = sizeBytes;
+    }
+
+    public Long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(Long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public void setRowsRead(long rowsRead) {
+        this.rowsRead = rowsRead;
+    }
+
+    public long getRowsSaved() {
+        return rowsSaved;
+    }
+
+    public void setRowsSaved(long rowsSaved) {
+        this.rowsSaved = rowsSaved;
+    }
+
+    public long getRowsRejected() {
+        return rowsRejected;
+    }
+
+    public void setRowsRejected(long rowsRejected) {
+        this.rowsRejected = rowsRejected;
+    }
+
+    public long getLastCommittedOffset() {
+        return lastCommittedOffset;
+    }
+
+    public void setLastCommittedOffset(long lastCommittedOffset) {
+        this.lastCommittedOffset = lastCommittedOffset;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(LocalDateTime completedAt) {
+        this.completedAt = completedAt;
+    }
+
+    public boolean matches(long sizeBytes, long lastModified) {
+        return this.sizeBytes != null && this.sizeBytes == sizeBytes
+                && this.lastModified != null && this.lastModified == lastModified;
+    }
+}
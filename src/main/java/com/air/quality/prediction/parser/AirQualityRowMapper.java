@@ -0,0 +1,104 @@
+package com.air.quality.prediction.parser;
+
+import com.air.quality.prediction.aqi.AqiCalculator;
+import com.air.quality.prediction.model.AirQualityData;
+import com.air.quality.prediction.model.AirQualityParameter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+
+/**
+ * Turns CSV records of one file into {@link AirQualityData}. Keeps the per-file date/time
+ * layout and number parsing counters, so it is not thread-safe; parallel parsers use one
+ * instance each.
+ * <p>
+ * Rejected rows are counted by reason. Warnings about them are rate-limited across all
+ * files, and the row is only formatted when the warning is actually logged.
+ */
+public class AirQualityRowMapper {
+
+    private static final Logger logger = LoggerFactory.getLogger(AirQualityRowMapper.class);
+
+    private static final WarningRateLimiter rejectWarnings = new WarningRateLimiter(logger, 20, 10_000);
+
+    // The marker follows the last parameter field.
+    private static final int MRK_INDEX = AirQualityParameter.all().stream()
+            .mapToInt(AirQualityParameter::getCsvIndex).max().orElseThrow() + 1;
+
+    public enum RejectReason {
+        MISSING_COLUMNS, INVALID_DATE_TIME, MALFORMED_LINE
+    }
+
+    private final String filename;
+    private final CsvDateTimeParser dateTimeParser = new CsvDateTimeParser();
+    private final CsvNumberParser numberParser = new CsvNumberParser();
+    private final long[] rejected = new long[RejectReason.values().length];
+
+    public AirQualityRowMapper(String filename) {
+        this.filename = filename;
+    }
+
+    public CsvDateTimeParser getDateTimeParser() {
+        return dateTimeParser;
+    }
+
+    public CsvNumberParser getNumberParser() {
+        return numberParser;
+    }
+
+    public long getRejectedCount(RejectReason reason) {
+        return rejected[reason.ordinal()];
+    }
+
+    /**
+     * Counts a line the CSV parser could not split into fields.
+     */
+    public void rejectMalformed(String message) {
+        rejected[RejectReason.MALFORMED_LINE.ordinal()]++;
+        if (rejectWarnings.tryAcquire()) {
+            logger.warn("Malformed CSV line in {}: {}", filename, message);
+        }
+    }
+
+    /**
+     * @return the mapped row, or {@code null} if the row is rejected
+     */
+    public AirQualityData map(String[] row) {
+        if (row.length <= MRK_INDEX) {
+            rejected[RejectReason.MISSING_COLUMNS.ordinal()]++;
+            if (rejectWarnings.tryAcquire()) {
+                logger.warn("Row in {} has insufficient columns ({}): {}", filename, row.length, Arrays.toString(row));
+            }
+            return null;
+        }
+
+        AirQualityData data = new AirQualityData();
+        data.setSourceFile(filename);
+
+        LocalDate date = dateTimeParser.parseDate(row[0]);
+        LocalTime time = dateTimeParser.parseTime(row[1]);
+
+        if (date == null || time == null) {
+            rejected[RejectReason.INVALID_DATE_TIME.ordinal()]++;
+            if (rejectWarnings.tryAcquire()) {
+                logger.warn("Could not parse date/time in {}: {} / {}", filename, row[0], row[1]);
+            }
+            return null;
+        }
+
+        data.setDate(date);
+        data.setTime(time);
+
+        for (AirQualityParameter parameter : AirQualityParameter.all()) {
+            parameter.set(data, numberParser.parse(row[parameter.getCsvIndex()]));
+        }
+
+        data.setMrk(row[MRK_INDEX].trim());
+        AqiCalculator.apply(data);
+
+        return data;
+    }
+}
@@ -0,0 +1,121 @@
+package com.air.quality.prediction.parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a CSV file into newline-aligned byte ranges and reads the lines of a range
+ * through a memory mapping, so that ranges can be parsed independently.
+ * <p>
+ * Lines are split on {@code \n} with a trailing {@code \r} removed, matching how
+ * {@link com.opencsv.CSVReader} reads physical lines. Quoted fields spanning several
+ * lines are not supported in this mode.
+ */
+public final class CsvByteRanges {
+
+    public record Range(long start, long end) {
+        public long length() {
+            return end - start;
+        }
+    }
+
+    @FunctionalInterface
+    public interface LineHandler {
+        void accept(String line) throws InterruptedException;
+    }
+
+    // A single mapping is limited to Integer.MAX_VALUE bytes; stay well below it.
+    private static final long MAX_RANGE_BYTES = 256L * 1024 * 1024;
+
+    private CsvByteRanges() {
+    }
+
+    /**
+     * Returns the offset just past the first line, i.e. where data starts after the header.
+     */
+    public static long skipLine(FileChannel channel, long position) throws IOException {
+        return nextLineStart(channel, position);
+    }
+
+    /**
+     * Splits {@code [start, size)} into roughly {@code parts} ranges (more for very large
+     * files) that each begin at the start of a line.
+     */
+    public static List<Range> split(FileChannel channel, long start, int parts) throws IOException {
+        long size = channel.size();
+        long length = size - start;
+        List<Range> ranges = new ArrayList<>();
+        if (length <= 0) {
+            return ranges;
+        }
+        long target = Math.min(MAX_RANGE_BYTES, Math.max(1, (length + parts - 1) / parts));
+
+        long rangeStart = start;
+        while (rangeStart < size) {
+            long rangeEnd = rangeStart + target >= size ? size : nextLineStart(channel, rangeStart + target);
+            ranges.add(new Range(rangeStart, rangeEnd));
+            rangeStart = rangeEnd;
+        }
+        return ranges;
+    }
+
+    /**
+     * Maps the range and passes each of its lines, decoded with {@code charset}, to
+     * {@code handler}.
+     */
+    public static void forEachLine(FileChannel channel, Range range, Charset charset,
+                                   LineHandler handler) throws IOException, InterruptedException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, range.start(), range.length());
+        byte[] line = new byte[512];
+        int lineLength = 0;
+        int limit = buffer.limit();
+        for (int i = 0; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n') {
+                handler.accept(decode(line, lineLength, charset));
+                lineLength = 0;
+                continue;
+            }
+            if (lineLength == line.length) {
+                byte[] grown = new byte[line.length * 2];
+                System.arraycopy(line, 0, grown, 0, lineLength);
+                line = grown;
+            }
+            line[lineLength++] = b;
+        }
+        if (lineLength > 0) {
+            handler.accept(decode(line, lineLength, charset));
+        }
+    }
+
+    private static String decode(byte[] line, int length, Charset charset) {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        return new String(line, 0, length, charset);
+    }
+
+    private static long nextLineStart(FileChannel channel, long position) throws IOException {
+        long size = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,257 @@
+package com.air.quality.prediction.parser;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Parses the date and time columns of one CSV file.
+ * <p>
+ * The first value that parses through the formatter list fixes the layout for the
+ * rest of the file. From then on values are read by a hand-written parser for that
+ * layout, which returns {@code null} instead of throwing; only values that do not
+ * fit the detected layout go back through the formatter list.
+ * <p>
+ * Instances keep per-file state and are not thread-safe.
+ */
+public class CsvDateTimeParser {
+
+    enum DateLayout {
+        ISO("yyyy-MM-dd"),
+        DAY_MONTH_YEAR("dd-MM-yyyy"),
+        MONTH_DAY_YEAR("MM/dd/yyyy"),
+        COMPACT("yyMMdd");
+
+        private final DateTimeFormatter formatter;
+
+        DateLayout(String pattern) {
+            this.formatter = DateTimeFormatter.ofPattern(pattern);
+        }
+    }
+
+    enum TimeLayout {
+        SECONDS("HH:mm:ss"),
+        MILLIS("HH:mm:ss.SSS"),
+        MINUTES("HH:mm"),
+        COMPACT("HHmmss");
+
+        private final DateTimeFormatter formatter;
+
+        TimeLayout(String pattern) {
+            this.formatter = DateTimeFormatter.ofPattern(pattern);
+        }
+    }
+
+    private static final DateLayout[] DATE_LAYOUTS = DateLayout.values();
+    private static final TimeLayout[] TIME_LAYOUTS = TimeLayout.values();
+
+    private DateLayout dateLayout;
+    private TimeLayout timeLayout;
+    private long slowPathCount;
+
+    public LocalDate parseDate(String value) {
+        if (value == null) {
+            return null;
+        }
+        if (dateLayout != null) {
+            LocalDate date = parseDateFast(value, dateLayout);
+            if (date != null) {
+                return date;
+            }
+        }
+        slowPathCount++;
+        String trimmed = value.trim();
+        for (DateLayout layout : DATE_LAYOUTS) {
+            try {
+                LocalDate date = LocalDate.parse(trimmed, layout.formatter);
+                if (dateLayout == null) {
+                    dateLayout = layout;
+                }
+                return date;
+            } catch (DateTimeParseException e) {
+                // try the next layout
+            }
+        }
+        return null;
+    }
+
+    public LocalTime parseTime(String value) {
+        if (value == null) {
+            return null;
+        }
+        if (timeLayout != null) {
+            LocalTime time = parseTimeFast(value, timeLayout);
+            if (time != null) {
+                return time;
+            }
+        }
+        slowPathCount++;
+        String trimmed = value.trim();
+        for (TimeLayout layout : TIME_LAYOUTS) {
+            try {
+                LocalTime time = LocalTime.parse(trimmed, layout.formatter);
+                if (timeLayout == null) {
+                    timeLayout = layout;
+                }
+                return time;
+            } catch (DateTimeParseException e) {
+                // try the next layout
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Number of values that could not be read by the detected layout and went through
+     * the formatter list instead.
+     */
+    public long getSlowPathCount() {
+        return slowPathCount;
+    }
+
+    public String describeLayout() {
+        return (dateLayout != null ? dateLayout.name() : "?") + "/" + (timeLayout != null ? timeLayout.name() : "?");
+    }
+
+    static LocalDate parseDateFast(String value, DateLayout layout) {
+        int begin = firstNonBlank(value);
+        int end = lastNonBlank(value, begin);
+        int year;
+        int month;
+        int day;
+        switch (layout) {
+            case ISO -> {
+                if (end - begin != 10 || value.charAt(begin + 4) != '-' || value.charAt(begin + 7) != '-') {
+                    return null;
+                }
+                year = digits(value, begin, 4);
+                month = digits(value, begin + 5, 2);
+                day = digits(value, begin + 8, 2);
+            }
+            case DAY_MONTH_YEAR -> {
+                if (end - begin != 10 || value.charAt(begin + 2) != '-' || value.charAt(begin + 5) != '-') {
+                    return null;
+                }
+                day = digits(value, begin, 2);
+                month = digits(value, begin + 3, 2);
+                year = digits(value, begin + 6, 4);
+            }
+            case MONTH_DAY_YEAR -> {
+                if (end - begin != 10 || value.charAt(begin + 2) != '/' || value.charAt(begin + 5) != '/') {
+                    return null;
+                }
+                month = digits(value, begin, 2);
+                day = digits(value, begin + 3, 2);
+                year = digits(value, begin + 6, 4);
+            }
+            case COMPACT -> {
+                if (end - begin != 6) {
+                    return null;
+                }
+                year = digits(value, begin, 2);
+                month = digits(value, begin + 2, 2);
+                day = digits(value, begin + 4, 2);
+                if (year >= 0) {
+                    year += 2000;
+                }
+            }
+            default -> {
+                return null;
+            }
+        }
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return null;
+        }
+        // Same as the formatters' SMART resolver: a day past the end of the month is clamped.
+        int lengthOfMonth = YearMonth.of(year, month).lengthOfMonth();
+        return LocalDate.of(year, month, Math.min(day, lengthOfMonth));
+    }
+
+    static LocalTime parseTimeFast(String value, TimeLayout layout) {
+        int begin = firstNonBlank(value);
+        int end = lastNonBlank(value, begin);
+        int hour;
+        int minute;
+        int second = 0;
+        int millis = 0;
+        switch (layout) {
+            case SECONDS, MILLIS -> {
+                int expectedLength = layout == TimeLayout.SECONDS ? 8 : 12;
+                if (end - begin != expectedLength
+                        || value.charAt(begin + 2) != ':' || value.charAt(begin + 5) != ':') {
+                    return null;
+                }
+                hour = digits(value, begin, 2);
+                minute = digits(value, begin + 3, 2);
+                second = digits(value, begin + 6, 2);
+                if (layout == TimeLayout.MILLIS) {
+                    if (value.charAt(begin + 8) != '.') {
+                        return null;
+                    }
+                    millis = digits(value, begin + 9, 3);
+                    if (millis < 0) {
+                        return null;
+                    }
+                }
+            }
+            case MINUTES -> {
+                if (end - begin != 5 || value.charAt(begin + 2) != ':') {
+                    return null;
+                }
+                hour = digits(value, begin, 2);
+                minute = digits(value, begin + 3, 2);
+            }
+            case COMPACT -> {
+                if (end - begin != 6) {
+                    return null;
+                }
+                hour = digits(value, begin, 2);
+                minute = digits(value, begin + 2, 2);
+                second = digits(value, begin + 4, 2);
+            }
+            default -> {
+                return null;
+            }
+        }
+        // 24:00 is accepted by the formatters as midnight; leave it to them.
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return null;
+        }
+        return LocalTime.of(hour, minute, second, millis * 1_000_000);
+    }
+
+    /**
+     * Reads {@code count} ASCII digits starting at {@code offset}, or returns -1 if any
+     * of them is not a digit.
+     */
+    private static int digits(String value, int offset, int count) {
+        int result = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    // Same whitespace rule as String.trim().
+    private static int firstNonBlank(String value) {
+        int begin = 0;
+        while (begin < value.length() && value.charAt(begin) <= ' ') {
+            begin++;
+        }
+        return begin;
+    }
+
+    private static int lastNonBlank(String value, int begin) {
+        int end = value.length();
+        while (end > begin && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,158 @@
+package com.air.quality.prediction.parser;
+
+/**
+ * Parses the numeric sensor columns of one CSV file.
+ * <p>
+ * Plain decimal values (optional sign, digits, optional fraction and exponent) are read
+ * straight from the characters of the field without trimming or copying it. When the
+ * digits fit in 2^53 and the decimal exponent is within ±22 the result is computed with a
+ * single multiplication or division, which is exactly rounded. Anything else goes through
+ * {@link Double#parseDouble(String)} so results are the same as before.
+ * <p>
+ * Empty fields and {@code "null"} (any case) are {@code null}. Values that cannot be parsed
+ * at all are also returned as {@code null}, but are counted.
+ * <p>
+ * Instances keep per-file counters and are not thread-safe.
+ */
+public class CsvNumberParser {
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final int MAX_SIGNIFICANT_DIGITS = 18;
+
+    private long invalidCount;
+    private long slowPathCount;
+
+    public Double parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        int begin = 0;
+        int end = value.length();
+        while (begin < end && value.charAt(begin) <= ' ') {
+            begin++;
+        }
+        while (end > begin && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (begin == end) {
+            return null;
+        }
+        if (end - begin == 4 && value.regionMatches(true, begin, "null", 0, 4)) {
+            return null;
+        }
+
+        double fast = parseFast(value, begin, end);
+        if (!Double.isNaN(fast)) {
+            return fast;
+        }
+
+        slowPathCount++;
+        try {
+            return Double.parseDouble(value.substring(begin, end));
+        } catch (NumberFormatException e) {
+            invalidCount++;
+            return null;
+        }
+    }
+
+    /**
+     * Number of non-empty values that were not numbers and were stored as {@code null}.
+     */
+    public long getInvalidCount() {
+        return invalidCount;
+    }
+
+    /**
+     * Number of values that needed {@link Double#parseDouble(String)}, including invalid ones.
+     */
+    public long getSlowPathCount() {
+        return slowPathCount;
+    }
+
+    /**
+     * Returns the parsed value, or NaN if the text is not a plain decimal that can be
+     * converted exactly on the fast path.
+     */
+    private static double parseFast(String value, int begin, int end) {
+        int i = begin;
+        boolean negative = false;
+        char c = value.charAt(i);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean seenDot = false;
+        for (; i < end; i++) {
+            c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+                if (mantissa != 0 || c != '0') {
+                    if (++significantDigits > MAX_SIGNIFICANT_DIGITS) {
+                        return Double.NaN;
+                    }
+                    mantissa = mantissa * 10 + (c - '0');
+                }
+                if (seenDot) {
+                    exponent--;
+                }
+            } else if (c == '.' && !seenDot) {
+                seenDot = true;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+
+        if (i < end) {
+            c = value.charAt(i);
+            if (c != 'e' && c != 'E') {
+                return Double.NaN;
+            }
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+                negativeExponent = value.charAt(i) == '-';
+                i++;
+            }
+            if (i == end || end - i > 3) {
+                return Double.NaN;
+            }
+            int explicitExponent = 0;
+            for (; i < end; i++) {
+                c = value.charAt(i);
+                if (c < '0' || c > '9') {
+                    return Double.NaN;
+                }
+                explicitExponent = explicitExponent * 10 + (c - '0');
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        if (mantissa > MAX_EXACT_MANTISSA) {
+            return Double.NaN;
+        }
+        double result;
+        if (mantissa == 0) {
+            result = 0.0;
+        } else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+            result = mantissa * POWERS_OF_TEN[exponent];
+        } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+            result = mantissa / POWERS_OF_TEN[-exponent];
+        } else {
+            return Double.NaN;
+        }
+        return negative ? -result : result;
+    }
+}
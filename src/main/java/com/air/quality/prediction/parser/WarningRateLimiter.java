@@ -0,0 +1,47 @@
+package com.air.quality.prediction.parser;
+
+import org.slf4j.Logger;
+
+/**
+ * Lets at most {@code limit} warnings through per time window and counts the rest, so a
+ * badly broken file cannot flood the log. The number of suppressed warnings is logged
+ * when the next window opens.
+ */
+final class WarningRateLimiter {
+
+    private final Logger logger;
+    private final int limit;
+    private final long windowNanos;
+
+    private long windowStart = System.nanoTime();
+    private int issued;
+    private long suppressed;
+
+    WarningRateLimiter(Logger logger, int limit, long windowMillis) {
+        this.logger = logger;
+        this.limit = limit;
+        this.windowNanos = windowMillis * 1_000_000;
+    }
+
+    /**
+     * @return true if the caller may log its warning now
+     */
+    synchronized boolean tryAcquire() {
+        long now = System.nanoTime();
+        if (now - windowStart >= windowNanos) {
+            if (suppressed > 0) {
+                logger.warn("{} similar warnings were suppressed in the last {} s",
+                        suppressed, (now - windowStart) / 1_000_000_000L);
+            }
+            windowStart = now;
+            issued = 0;
+            suppressed = 0;
+        }
+        if (issued < limit) {
+            issued++;
+            return true;
+        }
+        suppressed++;
+        return false;
+    }
+}
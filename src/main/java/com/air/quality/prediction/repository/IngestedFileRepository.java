@@ -0,0 +1,24 @@
+package com.air.quality.prediction.repository;
+
+import com.air.quality.prediction.model.IngestedFile;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface IngestedFileRepository extends JpaRepository<IngestedFile, Long> {
+
+    Optional<IngestedFile> findByFilename(String filename);
+
+    @Modifying
+    @Query("UPDATE IngestedFile f SET f.lastCommittedOffset = :offset, f.rowsRead = :offset, " +
+            "f.rowsSaved = :rowsSaved, f.rowsRejected = :rowsRejected WHERE f.id = :id")
+    int updateProgress(@Param("id") Long id,
+                       @Param("offset") long offset,
+                       @Param("rowsSaved") long rowsSaved,
+                       @Param("rowsRejected") long rowsRejected);
+}
@@ -0,0 +1,32 @@
+package com.air.quality.prediction.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Defers work that mirrors a database change until the change has committed, so nothing
+ * outside the database ever reflects a transaction that rolls back. Callbacks run in the
+ * order they were registered.
+ */
+final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    /**
+     * Runs {@code action} once the current transaction commits, or right away outside of a
+     * transaction.
+     */
+    static void run(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
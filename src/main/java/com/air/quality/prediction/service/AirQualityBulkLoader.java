@@ -0,0 +1,231 @@
+package com.air.quality.prediction.service;
+
+import com.air.quality.prediction.model.AirQualityData;
+import com.air.quality.prediction.model.AirQualityParameter;
+import com.air.quality.prediction.repository.AirQualityRepository;
+import com.air.quality.prediction.store.RecentMeasurementStore;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Writes chunks of parsed rows into {@code air_quality_data}.
+ * <p>
+ * {@code AirQualityData} uses IDENTITY ids, so Hibernate cannot batch its inserts and
+ * {@code saveAll} ends up issuing one INSERT per row. The {@code copy} mode streams the
+ * chunk through the PostgreSQL COPY protocol, {@code jdbc-batch} sends a single JDBC
+ * batch, and {@code jpa} keeps the original repository path as a fallback.
+ * <p>
+ * COPY and the JDBC batch do not return generated keys, so their ids are drawn from the
+ * table's sequence up front, in one round trip per chunk. Every written row thus carries
+ * its id, which {@link RecentMeasurementStore} needs.
+ */
+@Service
+public class AirQualityBulkLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(AirQualityBulkLoader.class);
+
+    public enum WriteMode {
+        COPY, JDBC_BATCH, JPA
+    }
+
+    private static final String COLUMNS = "id, date, time, " + AirQualityParameter.all().stream()
+            .map(AirQualityParameter::getColumn)
+            .collect(Collectors.joining(", ")) + ", mrk, source_file, aqi, aqi_pollutant";
+
+    private static final String COPY_SQL = "COPY air_quality_data (" + COLUMNS + ") FROM STDIN WITH (FORMAT csv)";
+
+    private static final String INSERT_SQL = "INSERT INTO air_quality_data (" + COLUMNS + ") " +
+            "VALUES (" + "?, ".repeat(AirQualityParameter.all().size() + 6) + "?)";
+
+    private static final String NEXT_IDS_SQL =
+            "SELECT nextval(pg_get_serial_sequence('air_quality_data', 'id')) FROM generate_series(1, ?)";
+
+    private final AirQualityRepository airQualityRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+    private final DailyStatsRollup dailyStatsRollup;
+    private final DailyQuantileRollup dailyQuantileRollup;
+    private final HourlyStatsRollup hourlyStatsRollup;
+    private final DailyAqiRollup dailyAqiRollup;
+    private final RecentMeasurementStore recentStore;
+    private final PartitionMaintenanceService partitions;
+
+    @Value("${csv.ingest.write-mode:copy}")
+    private WriteMode writeMode;
+
+    @Autowired
+    public AirQualityBulkLoader(AirQualityRepository airQualityRepository,
+                                JdbcTemplate jdbcTemplate,
+                                DataSource dataSource,
+                                DailyStatsRollup dailyStatsRollup,
+                                DailyQuantileRollup dailyQuantileRollup,
+                                HourlyStatsRollup hourlyStatsRollup,
+                                DailyAqiRollup dailyAqiRollup,
+                                RecentMeasurementStore recentStore,
+                                PartitionMaintenanceService partitions) {
+        this.airQualityRepository = airQualityRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSource = dataSource;
+        this.dailyStatsRollup = dailyStatsRollup;
+        this.dailyQuantileRollup = dailyQuantileRollup;
+        this.hourlyStatsRollup = hourlyStatsRollup;
+        this.dailyAqiRollup = dailyAqiRollup;
+        this.recentStore = recentStore;
+        this.partitions = partitions;
+    }
+
+    public WriteMode getWriteMode() {
+        return writeMode;
+    }
+
+    @Transactional
+    public void write(List<AirQualityData> chunk) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        Set<LocalDate> dates = new HashSet<>();
+        for (AirQualityData data : chunk) {
+            dates.add(data.getDate());
+        }
+        partitions.ensurePartitions(dates);
+        switch (writeMode) {
+            case COPY -> {
+                assignIds(chunk);
+                copy(chunk);
+            }
+            case JDBC_BATCH -> {
+                assignIds(chunk);
+                batchInsert(chunk);
+            }
+            case JPA -> airQualityRepository.saveAll(chunk);
+        }
+        // Registered before the rollup evicts cached stats, so that a stats read after the
+        // eviction already finds the chunk in the store.
+        AfterCommit.run(() -> recentStore.add(chunk));
+        dailyStatsRollup.add(chunk);
+        dailyQuantileRollup.add(chunk);
+        hourlyStatsRollup.add(chunk);
+        dailyAqiRollup.add(chunk);
+    }
+
+    private void assignIds(List<AirQualityData> chunk) {
+        List<Long> ids = jdbcTemplate.queryForList(NEXT_IDS_SQL, Long.class, chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            chunk.get(i).setId(ids.get(i));
+        }
+    }
+
+    private void copy(List<AirQualityData> chunk) {
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL);
+            try {
+                StringBuilder line = new StringBuilder(256);
+                for (AirQualityData data : chunk) {
+                    line.setLength(0);
+                    appendCsvRow(line, data);
+                    byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+                    copyIn.writeToCopy(bytes, 0, bytes.length);
+                }
+                long copied = copyIn.endCopy();
+                logger.debug("Copied {} rows into air_quality_data", copied);
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("COPY into air_quality_data failed", e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    private void batchInsert(List<AirQualityData> chunk) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, chunk, chunk.size(), (ps, data) -> {
+            ps.setLong(1, data.getId());
+            ps.setObject(2, data.getDate());
+            ps.setObject(3, data.getTime());
+            int index = 4;
+            for (AirQualityParameter parameter : AirQualityParameter.all()) {
+                setDouble(ps, index++, parameter.get(data));
+            }
+            ps.setString(index++, data.getMrk());
+            ps.setString(index++, data.getSourceFile());
+            if (data.getAqi() == null) {
+                ps.setNull(index++, Types.SMALLINT);
+            } else {
+                ps.setInt(index++, data.getAqi());
+            }
+            ps.setString(index, data.getAqiPollutant());
+        });
+    }
+
+    private static void setDouble(PreparedStatement ps, int index, Double value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.DOUBLE);
+        } else {
+            ps.setDouble(index, value);
+        }
+    }
+
+    private static void appendCsvRow(StringBuilder line, AirQualityData data) {
+        line.append(data.getId()).append(',').append(data.getDate()).append(',').append(data.getTime());
+        for (AirQualityParameter parameter : AirQualityParameter.all()) {
+            appendDouble(line, parameter.get(data));
+        }
+        appendText(line, data.getMrk());
+        appendText(line, data.getSourceFile());
+        line.append(',');
+        if (data.getAqi() != null) {
+            line.append(data.getAqi().intValue());
+        }
+        appendText(line, data.getAqiPollutant());
+        line.append('\n');
+    }
+
+    // In COPY csv format an unquoted empty field is NULL.
+    private static void appendDouble(StringBuilder line, Double value) {
+        line.append(',');
+        if (value != null) {
+            line.append(value.doubleValue());
+        }
+    }
+
+    // Text is always quoted so that an empty string stays an empty string rather than NULL.
+    private static void appendText(StringBuilder line, String value) {
+        line.append(',');
+        if (value == null) {
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+}
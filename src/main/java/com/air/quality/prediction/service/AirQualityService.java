@@ -1,48 +1,132 @@
 package com.air.quality.prediction.service;
 
+import com.air.quality.prediction.config.CacheConfig;
+import com.air.quality.prediction.dto.DailyAqiDTO;
 import com.air.quality.prediction.dto.DailyStatsDTO;
+import com.air.quality.prediction.dto.PercentilesDTO;
+import com.air.quality.prediction.dto.RangeStatsDTO;
+import com.air.quality.prediction.dto.SeriesPointDTO;
 import com.air.quality.prediction.model.AirQualityData;
+import com.air.quality.prediction.model.AirQualityParameter;
+import com.air.quality.prediction.model.IngestedFile;
+import com.air.quality.prediction.parser.AirQualityRowMapper;
 import com.air.quality.prediction.repository.AirQualityRepository;
-import com.opencsv.CSVParser;
+import com.air.quality.prediction.store.RecentMeasurementStore;
 import com.opencsv.CSVParserBuilder;
 import com.opencsv.CSVReader;
 import com.opencsv.CSVReaderBuilder;
-import com.opencsv.exceptions.CsvException;
+import com.opencsv.exceptions.CsvValidationException;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 @Service
 public class AirQualityService {
 
     private static final Logger logger = LoggerFactory.getLogger(AirQualityService.class);
 
+    public static final int MAX_ROLLING_DAYS = 366;
+
     @Value("${csv.monitor.directory}")
     private String csvDirectory;
 
+    @Value("${csv.ingest.batch-size:500}")
+    private int batchSize;
+
+    @Value("${csv.monitor.stable-millis:2000}")
+    private long stableMillis;
+
+    // Files known to be ingested, with the mtime they had, so periodic scans do not hit
+    // the database for them.
+    private final Map<String, Long> processedFiles = new ConcurrentHashMap<>();
+
+    // Files queued or being ingested, so that the watcher, the periodic scan and manual
+    // triggers never ingest the same file twice at once.
+    private final Set<String> activeFiles = ConcurrentHashMap.newKeySet();
+
+    // Files a scan found still changing, each waited on by one task until it settles.
+    private final Set<String> settlingFiles = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService parserExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore parserSlots;
+
     private final AirQualityRepository airQualityRepository;
+    private final AirQualityBulkLoader bulkLoader;
+    private final IngestionLedgerService ingestionLedger;
+    private final IngestionWriterPool writerPool;
+    private final MappedCsvIngestService mappedCsvIngestService;
+    private final TransactionTemplate transactionTemplate;
+    private final IngestionMetrics metrics;
+    private final DailyStatsRollup dailyStatsRollup;
+    private final DailyQuantileRollup dailyQuantileRollup;
+    private final HourlyStatsRollup hourlyStatsRollup;
+    private final DailyAqiRollup dailyAqiRollup;
+    private final RecentMeasurementStore recentStore;
 
     @Autowired
-    public AirQualityService(AirQualityRepository airQualityRepository) {
+    public AirQualityService(AirQualityRepository airQualityRepository,
+                             AirQualityBulkLoader bulkLoader,
+                             IngestionLedgerService ingestionLedger,
+                             IngestionWriterPool writerPool,
+                             MappedCsvIngestService mappedCsvIngestService,
+                             TransactionTemplate transactionTemplate,
+                             IngestionMetrics metrics,
+                             DailyStatsRollup dailyStatsRollup,
+                             DailyQuantileRollup dailyQuantileRollup,
+                             HourlyStatsRollup hourlyStatsRollup,
+                             DailyAqiRollup dailyAqiRollup,
+                             RecentMeasurementStore recentStore,
+                             @Value("${csv.ingest.parser-threads:4}") int parserThreads) {
         this.airQualityRepository = airQualityRepository;
+        this.bulkLoader = bulkLoader;
+        this.ingestionLedger = ingestionLedger;
+        this.writerPool = writerPool;
+        this.mappedCsvIngestService = mappedCsvIngestService;
+        this.transactionTemplate = transactionTemplate;
+        this.metrics = metrics;
+        this.dailyStatsRollup = dailyStatsRollup;
+        this.dailyQuantileRollup = dailyQuantileRollup;
+        this.hourlyStatsRollup = hourlyStatsRollup;
+        this.dailyAqiRollup = dailyAqiRollup;
+        this.recentStore = recentStore;
+        this.parserSlots = new Semaphore(parserThreads);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        parserExecutor.shutdownNow();
     }
 
-    @Scheduled(fixedDelay = 60000)
+    /**
+     * Full directory scan. New files are normally picked up by {@link CsvDirectoryWatcher};
+     * this runs at startup and then at a low frequency as a safety net.
+     */
+    @Scheduled(fixedDelayString = "${csv.monitor.reconcile-interval-ms:900000}",
+            initialDelayString = "${csv.monitor.reconcile-interval-ms:900000}")
     public void checkForNewFiles() {
         logger.info("Checking for new CSV files in directory: {}", csvDirectory);
 
@@ -56,8 +140,19 @@ public class AirQualityService {
 
             File[] files = dir.listFiles((d, name) -> name.toLowerCase().endsWith(".csv"));
             if (files != null) {
+                long settledBefore = System.currentTimeMillis() - stableMillis;
                 for (File file : files) {
-                    processCsvFile(file);
+                    if (Objects.equals(processedFiles.get(file.getName()), file.lastModified())) {
+                        continue;
+                    }
+                    if (file.lastModified() > settledBefore) {
+                        // Possibly still being written. The watcher only sees later events,
+                        // so a file finished just before this scan would otherwise wait for
+                        // the next one.
+                        submitWhenSettled(file);
+                        continue;
+                    }
+                    submitCsvFile(file);
                 }
             }
         } catch (Exception e) {
@@ -65,236 +160,408 @@ public class AirQualityService {
         }
     }
 
-    @Transactional
-    public void processCsvFile(File file) {
-        String filename = file.getName();
-
-        if (airQualityRepository.existsBySourceFile(filename)) {
-            logger.info("File {} has already been processed, skipping", filename);
+    // Submits the file once its size and modification time have not changed for
+    // stableMillis, unless it has been ingested meanwhile.
+    private void submitWhenSettled(File file) {
+        if (!settlingFiles.add(file.getName())) {
             return;
         }
-
-        logger.info("Processing new CSV file: {}", filename);
-
-        try (FileReader fileReader = new FileReader(file)) {
-            CSVParser parser = new CSVParserBuilder().withSeparator(',').build();
-            CSVReader csvReader = new CSVReaderBuilder(fileReader)
-                    .withCSVParser(parser)
-                    .withSkipLines(1)
-                    .build();
-
-            List<String[]> rows = csvReader.readAll();
-            List<AirQualityData> dataList = new ArrayList<>();
-
-            List<DateTimeFormatter> dateFormatters = Arrays.asList(
-                    DateTimeFormatter.ofPattern("yyyy-MM-dd"),
-                    DateTimeFormatter.ofPattern("dd-MM-yyyy"),
-                    DateTimeFormatter.ofPattern("MM/dd/yyyy"),
-                    DateTimeFormatter.ofPattern("yyMMdd")
-            );
-
-            List<DateTimeFormatter> timeFormatters = Arrays.asList(
-                    DateTimeFormatter.ofPattern("HH:mm:ss"),
-                    DateTimeFormatter.ofPattern("HH:mm:ss.SSS"),
-                    DateTimeFormatter.ofPattern("HH:mm"),
-                    DateTimeFormatter.ofPattern("HHmmss")
-            );
-
-            for (String[] row : rows) {
-                if (row.length < 28) {
-                    logger.warn("Row has insufficient columns ({}): {}", row.length, Arrays.toString(row));
-                    continue;
+        parserExecutor.execute(() -> {
+            try {
+                long size = -1;
+                long lastModified = -1;
+                while (file.length() != size || file.lastModified() != lastModified) {
+                    size = file.length();
+                    lastModified = file.lastModified();
+                    Thread.sleep(stableMillis);
+                }
+                if (file.exists() && !Objects.equals(processedFiles.get(file.getName()), lastModified)) {
+                    submitCsvFile(file);
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                settlingFiles.remove(file.getName());
+            }
+        });
+    }
 
-                AirQualityData data = new AirQualityData();
-                data.setSourceFile(filename);
+    /**
+     * Queues a file for ingestion on the parser pool. Up to {@code csv.ingest.parser-threads}
+     * files are parsed at once; their chunks are committed by {@link IngestionWriterPool}.
+     *
+     * @return false if the file is already queued or being ingested
+     */
+    public boolean submitCsvFile(File file) {
+        String filename = file.getName();
+        if (!activeFiles.add(filename)) {
+            logger.debug("File {} is already queued for processing", filename);
+            return false;
+        }
+        parserExecutor.execute(() -> {
+            try {
+                parserSlots.acquire();
+                try {
+                    ingest(file, new IngestionProgress(file.length()));
+                } finally {
+                    parserSlots.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                logger.error("Error processing CSV file: {}", filename, e);
+            } finally {
+                activeFiles.remove(filename);
+            }
+        });
+        return true;
+    }
 
-                LocalDate date = null;
-                LocalTime time = null;
+    /**
+     * Ingests a file on the calling thread, unless it is already queued or being ingested,
+     * reporting into {@code progress} as it goes.
+     */
+    public void processCsvFile(File file, IngestionProgress progress) {
+        String filename = file.getName();
+        if (!activeFiles.add(filename)) {
+            logger.info("File {} is already being processed, skipping", filename);
+            progress.skipped("File is already being processed");
+            return;
+        }
+        try {
+            ingest(file, progress);
+        } finally {
+            activeFiles.remove(filename);
+        }
+    }
 
+    private void ingest(File file, IngestionProgress progress) {
+        progress.started();
+        try {
+            ingestFile(file, progress);
+        } finally {
+            metrics.fileFinished(progress);
+        }
+    }
 
-                for (DateTimeFormatter formatter : dateFormatters) {
-                    try {
-                        date = LocalDate.parse(row[0].trim(), formatter);
-                        break;
-                    } catch (DateTimeParseException e) {
+    private void ingestFile(File file, IngestionProgress progress) {
+        String filename = file.getName();
 
-                    }
-                }
+        IngestionLedgerService.Plan plan;
+        try {
+            plan = ingestionLedger.plan(file);
+        } catch (IOException e) {
+            logger.error("Error reading CSV file: {}", filename, e);
+            progress.failed(e.getMessage());
+            return;
+        }
+        if (plan.action() == IngestionLedgerService.Action.SKIP) {
+            logger.info("File {} has already been processed, skipping", filename);
+            processedFiles.put(filename, file.lastModified());
+            progress.skipped("File has already been processed");
+            return;
+        }
 
-                for (DateTimeFormatter formatter : timeFormatters) {
-                    try {
-                        time = LocalTime.parse(row[1].trim(), formatter);
-                        break;
-                    } catch (DateTimeParseException e) {
+        IngestedFile entry = plan.entry();
+        if (plan.action() == IngestionLedgerService.Action.START && mappedCsvIngestService.accepts(file)) {
+            ingestMapped(file, entry, progress);
+            return;
+        }
 
-                    }
-                }
+        long resumeOffset = entry.getLastCommittedOffset();
+        progress.resumed(resumeOffset, entry.getRowsSaved(), entry.getRowsRejected());
+        logger.info("Processing new CSV file: {} (write mode {})", filename, bulkLoader.getWriteMode());
+
+        AirQualityRowMapper rowMapper = new AirQualityRowMapper(filename);
+        MessageDigest digest = IngestionLedgerService.newDigest();
+
+        long startNanos = System.nanoTime();
+        long rowsRead = 0;
+        long rowsSaved = entry.getRowsSaved();
+        long rowsRejected = entry.getRowsRejected();
+        // Counters already passed on to the progress, which is updated once per chunk.
+        long reportedRows = resumeOffset;
+        long reportedRejected = rowsRejected;
+        long reportedBytes = 0;
+        // At most one chunk per file is with the writers while the next one is parsed, so
+        // chunks of a file commit in order and the ledger offset only moves forward.
+        CompletableFuture<Void> pendingWrite = CompletableFuture.completedFuture(null);
+
+        try (FileInputStream fileInput = new FileInputStream(file);
+             Reader fileReader = new InputStreamReader(
+                     new DigestInputStream(fileInput, digest), Charset.defaultCharset());
+             CSVReader csvReader = new CSVReaderBuilder(fileReader)
+                     .withCSVParser(new CSVParserBuilder().withSeparator(',').build())
+                     .withSkipLines(1)
+                     .build()) {
+
+            // Records up to the last committed chunk of an interrupted run are already stored;
+            // they are still read so that the content hash covers the whole file.
+            while (rowsRead < resumeOffset && csvReader.readNext() != null) {
+                rowsRead++;
+            }
+            if (resumeOffset > 0) {
+                reportedBytes = fileInput.getChannel().position();
+                progress.resumedAt(reportedBytes);
+            }
 
-                if (date == null || time == null) {
-                    logger.warn("Could not parse date/time: {} / {}", row[0], row[1]);
+            // Rows are read one at a time and flushed in fixed-size chunks, so heap use
+            // does not depend on the size of the file.
+            List<AirQualityData> chunk = new ArrayList<>(batchSize);
+            String[] row;
+            while ((row = csvReader.readNext()) != null) {
+                rowsRead++;
+                AirQualityData data = rowMapper.map(row);
+                if (data == null) {
+                    rowsRejected++;
                     continue;
                 }
 
-                data.setDate(date);
-                data.setTime(time);
-
-                try {
-                    data.setPm25(parseDoubleOrNull(row[2]));
-                    data.setPm10(parseDoubleOrNull(row[3]));
-                    data.setIaq(parseDoubleOrNull(row[4]));
-                    data.setHcho(parseDoubleOrNull(row[5]));
-                    data.setCo2(parseDoubleOrNull(row[6]));
-                    data.setP(parseDoubleOrNull(row[7]));
-                    data.setTin(parseDoubleOrNull(row[8]));
-                    data.setTout(parseDoubleOrNull(row[9]));
-                    data.setRhin(parseDoubleOrNull(row[10]));
-                    data.setRhout(parseDoubleOrNull(row[11]));
-                    data.setLat(parseDoubleOrNull(row[12]));
-                    data.setLon(parseDoubleOrNull(row[13]));
-                    data.setHdg(parseDoubleOrNull(row[14]));
-                    data.setAmsl(parseDoubleOrNull(row[15]));
-                    data.setAgl(parseDoubleOrNull(row[16]));
-                    data.setMil(parseDoubleOrNull(row[17]));
-                    data.setNo2(parseDoubleOrNull(row[18]));
-                    data.setNo(parseDoubleOrNull(row[19]));
-                    data.setSo2(parseDoubleOrNull(row[20]));
-                    data.setH2s(parseDoubleOrNull(row[21]));
-                    data.setCo(parseDoubleOrNull(row[22]));
-                    data.setHcn(parseDoubleOrNull(row[23]));
-                    data.setHcl(parseDoubleOrNull(row[24]));
-                    data.setNh3(parseDoubleOrNull(row[25]));
-                    data.setEc(parseDoubleOrNull(row[26]));
-
-                    if (row.length > 27) {
-                        data.setMrk(row[27].trim());
-                    } else {
-                        data.setMrk("");
-                    }
-
-                    dataList.add(data);
-                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
-                    logger.warn("Error parsing numeric values in row: {} - {}", Arrays.toString(row), e.getMessage());
-                    continue;
+                chunk.add(data);
+                if (chunk.size() >= batchSize) {
+                    long position = fileInput.getChannel().position();
+                    progress.parsed(rowsRead - reportedRows, rowsRejected - reportedRejected, position - reportedBytes);
+                    metrics.rowsParsed(rowsRead - reportedRows);
+                    reportedRows = rowsRead;
+                    reportedRejected = rowsRejected;
+                    reportedBytes = position;
+
+                    pendingWrite.join();
+                    pendingWrite = saveChunk(entry, chunk, rowsRead, rowsSaved, rowsRejected, progress);
+                    rowsSaved += chunk.size();
+                    chunk = new ArrayList<>(batchSize);
                 }
             }
+            progress.parsed(rowsRead - reportedRows, rowsRejected - reportedRejected, 0);
+            metrics.rowsParsed(rowsRead - reportedRows);
+            metrics.rowsMapped(rowMapper);
+
+            pendingWrite.join();
+            if (!chunk.isEmpty()) {
+                pendingWrite = saveChunk(entry, chunk, rowsRead, rowsSaved, rowsRejected, progress);
+                rowsSaved += chunk.size();
+                pendingWrite.join();
+            }
 
-            if (!dataList.isEmpty()) {
-                logger.info("Saving {} records from file {}", dataList.size(), filename);
-                for (int i = 0; i < dataList.size(); i += 500) {
-                    int end = Math.min(i + 500, dataList.size());
-                    airQualityRepository.saveAll(dataList.subList(i, end));
-                    logger.debug("Saved batch {} to {}", i, end);
-                }
-                logger.info("Successfully processed file {}", filename);
+            // Drain anything the CSV reader did not consume so the hash covers the whole file.
+            while (fileReader.read() != -1) {
+                // ignore
+            }
+            ingestionLedger.complete(entry, IngestionLedgerService.toHex(digest), rowsRead, rowsSaved, rowsRejected);
+            processedFiles.put(filename, file.lastModified());
+            progress.completed();
+
+            if (rowsSaved > 0) {
+                long elapsedMillis = Math.max(1, (System.nanoTime() - startNanos) / 1_000_000);
+                long rowsParsed = rowsRead - resumeOffset;
+                logger.info("Successfully processed file {}: {} rows read, {} saved, {} rejected in {} ms ({} rows/s), " +
+                                "date/time layout {} ({} values off the fast path), {} unparseable numeric values",
+                        filename, rowsRead, rowsSaved, rowsRejected, elapsedMillis, rowsParsed * 1000 / elapsedMillis,
+                        rowMapper.getDateTimeParser().describeLayout(),
+                        rowMapper.getDateTimeParser().getSlowPathCount(),
+                        rowMapper.getNumberParser().getInvalidCount());
             } else {
                 logger.warn("No valid data found in file {}", filename);
             }
 
-        } catch (IOException | CsvException e) {
-            logger.error("Error processing CSV file: {}", filename, e);
+        } catch (IOException | CsvValidationException | RuntimeException e) {
+            logger.error("Error processing CSV file: {} (after {} rows)", filename, rowsRead, e);
+            awaitQuietly(pendingWrite);
+            ingestionLedger.fail(entry);
+            progress.failed(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while processing CSV file: {} (after {} rows)", filename, rowsRead);
+            awaitQuietly(pendingWrite);
+            ingestionLedger.fail(entry);
+            progress.failed("Interrupted");
         }
     }
 
-    private Double parseDoubleOrNull(String value) {
-        if (value == null || value.trim().isEmpty() || value.trim().equalsIgnoreCase("null")) {
-            return null;
+    private void ingestMapped(File file, IngestedFile entry, IngestionProgress progress) {
+        String filename = file.getName();
+        logger.info("Processing new CSV file: {} in parallel ranges (write mode {})", filename, bulkLoader.getWriteMode());
+        long startNanos = System.nanoTime();
+        try {
+            MappedCsvIngestService.Result result = mappedCsvIngestService.ingest(file, progress);
+            ingestionLedger.complete(entry, result.contentHash(),
+                    result.rowsRead(), result.rowsSaved(), result.rowsRejected());
+            processedFiles.put(filename, file.lastModified());
+            progress.completed();
+
+            long elapsedMillis = Math.max(1, (System.nanoTime() - startNanos) / 1_000_000);
+            logger.info("Successfully processed file {}: {} rows read, {} saved, {} rejected in {} ms ({} rows/s), " +
+                            "{} unparseable numeric values",
+                    filename, result.rowsRead(), result.rowsSaved(), result.rowsRejected(), elapsedMillis,
+                    result.rowsRead() * 1000 / elapsedMillis, result.invalidValues());
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error processing CSV file: {}", filename, e);
+            ingestionLedger.fail(entry);
+            progress.failed(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while processing CSV file: {}", filename);
+            ingestionLedger.fail(entry);
+            progress.failed("Interrupted");
         }
+    }
+
+    private static void awaitQuietly(CompletableFuture<Void> write) {
         try {
-            return Double.parseDouble(value.trim());
-        } catch (NumberFormatException e) {
-            return null;
+            write.join();
+        } catch (RuntimeException ignored) {
+            // already failed; the ledger keeps the last offset that did commit
         }
     }
 
+    /**
+     * Queues one chunk and the file's new offset to be committed in a single transaction.
+     * Committing per chunk keeps the persistence context small, and an interrupted file can
+     * resume after the last chunk that made it.
+     */
+    private CompletableFuture<Void> saveChunk(IngestedFile entry, List<AirQualityData> chunk,
+                                              long offset, long rowsSaved, long rowsRejected,
+                                              IngestionProgress progress)
+            throws InterruptedException {
+        return writerPool.submit(() -> {
+            metrics.timeBatch(() -> transactionTemplate.executeWithoutResult(status -> {
+                bulkLoader.write(chunk);
+                ingestionLedger.recordChunk(entry, offset, rowsSaved + chunk.size(), rowsRejected);
+            }));
+            progress.saved(chunk.size());
+            logger.debug("Saved batch {} to {} of {}", rowsSaved, rowsSaved + chunk.size(), entry.getFilename());
+        });
+    }
+
     public List<AirQualityData> getDataByDate(LocalDate date) {
-        return airQualityRepository.findByDate(date);
+        return recentStore.findByDateRange(date, date)
+                .orElseGet(() -> airQualityRepository.findByDate(date));
     }
 
     public List<AirQualityData> getDataByDateRange(LocalDate startDate, LocalDate endDate) {
-        return airQualityRepository.findByDateRange(startDate, endDate);
+        return recentStore.findByDateRange(startDate, endDate)
+                .orElseGet(() -> airQualityRepository.findByDateRange(startDate, endDate));
+    }
+
+    /**
+     * Rows measured in {@code [from, to)}, in time order.
+     */
+    public List<AirQualityData> getDataByTimestampRange(LocalDateTime from, LocalDateTime to) {
+        return recentStore.findByTimestampRange(from, to)
+                .orElseGet(() -> airQualityRepository.findByTimestampRange(from, to,
+                        from.toLocalDate(), to.minusNanos(1).toLocalDate()));
     }
 
+    @Cacheable(CacheConfig.AVAILABLE_DATES)
     public List<LocalDate> getAvailableDates() {
-        return airQualityRepository.findAllDistinctDates();
+        return dailyStatsRollup.getAvailableDates();
     }
 
+    @Cacheable(CacheConfig.DAILY_STATS)
     public DailyStatsDTO getDailyStats(LocalDate date) {
-        Map<String, Object> result = airQualityRepository.getDailyStatsByDateNative(date);
-
-        System.out.println("DEBUG - Wynik zapytania dla daty " + date + ":");
-        for (Map.Entry<String, Object> entry : result.entrySet()) {
-            System.out.println(entry.getKey() + ": " +
-                    (entry.getValue() != null ?
-                            entry.getValue().getClass().getName() + " = " + entry.getValue() :
-                            "null"));
-        }
-
-        Map<String, Double> averages = new HashMap<>();
-        Map<String, Double> minimums = new HashMap<>();
-        Map<String, Double> maximums = new HashMap<>();
+        DailyStatsDTO stats = recentStore.getDailyStats(date, AirQualityParameter.SUMMARISED)
+                .orElseGet(() -> dailyStatsRollup.getDailyStats(date));
+        addPercentilesAndAqi(List.of(stats));
+        return stats;
+    }
 
-        if (result != null && !result.isEmpty()) {
-            String[] parameters = {"pm25", "pm10", "iaq", "hcho", "co2", "p", "tin", "tout",
-                    "rhin", "rhout", "no2", "no", "so2", "h2s", "co", "hcn",
-                    "hcl", "nh3", "ec"};
+    /**
+     * Recomputes {@code daily_stats}, {@code daily_sketch} and {@code hourly_stats} from the
+     * raw rows, then {@code daily_aqi} from them.
+     *
+     * @return the number of daily rollup rows written
+     */
+    public int rebuildDailyStats() {
+        int rows = dailyStatsRollup.rebuild();
+        dailyQuantileRollup.rebuild();
+        hourlyStatsRollup.rebuild();
+        dailyAqiRollup.rebuild();
+        return rows;
+    }
 
-            for (String param : parameters) {
-                processParameter(result, averages, minimums, maximums, param);
-            }
-        } else {
-            System.out.println("Brak danych dla daty: " + date);
+    /**
+     * The air quality index of each day of {@code [startDate, endDate]} that has one.
+     *
+     * @throws IllegalArgumentException if {@code endDate} is before {@code startDate}
+     */
+    public List<DailyAqiDTO> getDailyAqi(LocalDate startDate, LocalDate endDate) {
+        if (endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException("endDate must not be before startDate");
         }
-
-        return new DailyStatsDTO(date, averages, minimums, maximums);
+        return dailyAqiRollup.getRange(startDate, endDate);
     }
 
-    private void processParameter(Map<String, Object> result,
-                                  Map<String, Double> averages,
-                                  Map<String, Double> minimums,
-                                  Map<String, Double> maximums,
-                                  String param) {
-        String avgKey = "avg" + param.substring(0, 1).toUpperCase() + param.substring(1);
-        String minKey = "min" + param.substring(0, 1).toUpperCase() + param.substring(1);
-        String maxKey = "max" + param.substring(0, 1).toUpperCase() + param.substring(1);
+    /**
+     * Rolling means of {@code parameter} over {@code window}, one per hour of
+     * {@code [startDate, endDate]}.
+     *
+     * @throws IllegalArgumentException for an unknown parameter or a range that is too long
+     */
+    public List<SeriesPointDTO> getRollingMeans(String parameter, LocalDate startDate, LocalDate endDate,
+                                                HourlyStatsRollup.Window window) {
+        if (endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException("endDate must not be before startDate");
+        }
+        if (ChronoUnit.DAYS.between(startDate, endDate) >= MAX_ROLLING_DAYS) {
+            throw new IllegalArgumentException("Range too long, at most " + MAX_ROLLING_DAYS + " days are returned");
+        }
+        return hourlyStatsRollup.getRollingMeans(DailyStatsRollup.resolve(List.of(parameter)).get(0),
+                startDate, endDate, window);
+    }
 
-        try {
-            Object avgObj = result.get(avgKey);
-            if (avgObj != null) {
-                if (avgObj instanceof Number) {
-                    averages.put(param, ((Number) avgObj).doubleValue());
-                } else {
-                    System.out.println("WARNING: " + avgKey + " nie jest liczbą: " + avgObj.getClass().getName());
-                }
+    /**
+     * Percentiles of each of {@code parameters} over {@code [startDate, endDate]}, merged
+     * from the day sketches. All summarised parameters if {@code parameters} is empty.
+     *
+     * @throws IllegalArgumentException for an unknown parameter or a quantile outside [0, 1]
+     */
+    public PercentilesDTO getPercentiles(LocalDate startDate, LocalDate endDate,
+                                         List<String> parameters, List<Double> quantiles) {
+        if (endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException("endDate must not be before startDate");
+        }
+        List<AirQualityParameter> resolved = DailyStatsRollup.resolve(parameters);
+        for (double q : quantiles) {
+            if (!(q >= 0 && q <= 1)) {
+                throw new IllegalArgumentException("Quantiles must be between 0 and 1: " + q);
             }
-        } catch (Exception e) {
-            System.out.println("ERROR processing " + avgKey + ": " + e.getMessage());
         }
+        Map<AirQualityParameter, Long> counts = new EnumMap<>(AirQualityParameter.class);
+        Map<AirQualityParameter, Map<String, Double>> percentiles = new EnumMap<>(AirQualityParameter.class);
+        dailyQuantileRollup.getRangeDigests(startDate, endDate, resolved).forEach((parameter, digest) -> {
+            counts.put(parameter, digest.size());
+            percentiles.put(parameter, DailyQuantileRollup.percentiles(digest, quantiles));
+        });
+        return new PercentilesDTO(startDate, endDate, counts, percentiles);
+    }
 
-        try {
-            Object minObj = result.get(minKey);
-            if (minObj != null) {
-                if (minObj instanceof Number) {
-                    minimums.put(param, ((Number) minObj).doubleValue());
-                } else {
-                    System.out.println("WARNING: " + minKey + " nie jest liczbą: " + minObj.getClass().getName());
-                }
-            }
-        } catch (Exception e) {
-            System.out.println("ERROR processing " + minKey + ": " + e.getMessage());
+    /**
+     * Stats over {@code [startDate, endDate]} per period of {@code granularity}, merged
+     * from the daily rollup without reading raw rows. All summarised parameters if
+     * {@code parameters} is empty.
+     *
+     * @throws IllegalArgumentException for an unknown parameter
+     */
+    public List<RangeStatsDTO> getRangeStats(LocalDate startDate, LocalDate endDate,
+                                             DailyStatsRollup.Granularity granularity, List<String> parameters) {
+        if (endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException("endDate must not be before startDate");
         }
+        return dailyStatsRollup.getRangeStats(startDate, endDate, granularity, DailyStatsRollup.resolve(parameters));
+    }
 
-        try {
-            Object maxObj = result.get(maxKey);
-            if (maxObj != null) {
-                if (maxObj instanceof Number) {
-                    maximums.put(param, ((Number) maxObj).doubleValue());
-                } else {
-                    System.out.println("WARNING: " + maxKey + " nie jest liczbą: " + maxObj.getClass().getName());
-                }
+    private void addPercentilesAndAqi(List<DailyStatsDTO> statsList) {
+        Map<LocalDate, Map<AirQualityParameter, Map<String, Double>>> percentiles = dailyQuantileRollup.getDailyPercentiles(
+                statsList.stream().map(DailyStatsDTO::getDate).toList());
+        Map<LocalDate, DailyAqiDTO> aqi = dailyAqiRollup.getDailyAqi(
+                statsList.stream().map(DailyStatsDTO::getDate).toList());
+        for (DailyStatsDTO stats : statsList) {
+            stats.setPercentiles(percentiles.get(stats.getDate()));
+            DailyAqiDTO day = aqi.get(stats.getDate());
+            if (day != null) {
+                stats.setAqi(day.getAqi());
+                stats.setAqiPollutant(day.getPollutant());
             }
-        } catch (Exception e) {
-            System.out.println("ERROR processing " + maxKey + ": " + e.getMessage());
         }
     }
 
@@ -312,14 +579,11 @@ public class AirQualityService {
         }
     }
 
+    @Cacheable(CacheConfig.RECENT_DAILY_STATS)
     public List<DailyStatsDTO> getRecentDailyStats(int numberOfDays) {
-        List<LocalDate> dates = airQualityRepository.findAllDistinctDates();
-
-        return dates.stream()
-                .sorted(Comparator.reverseOrder())
-                .limit(numberOfDays)
-                .map(this::getDailyStats)
-                .collect(Collectors.toList());
+        List<DailyStatsDTO> statsList = dailyStatsRollup.getRecentDailyStats(numberOfDays);
+        addPercentilesAndAqi(statsList);
+        return statsList;
     }
 
 }
\ No newline at end of file
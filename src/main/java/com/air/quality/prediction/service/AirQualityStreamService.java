@@ -0,0 +1,96 @@
+package com.air.quality.prediction.service;
+
+import com.air.quality.prediction.model.AirQualityData;
+import com.air.quality.prediction.repository.AirQualityRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.stream.Stream;
+
+/**
+ * Writes large result sets to a response as they are read from the database.
+ * <p>
+ * Rows come from a server-side cursor in fetch-size batches and are detached once
+ * written, so neither the persistence context nor the JSON output grows with the range.
+ * The output is flushed every {@value #FLUSH_ROWS} rows so the client sees data early.
+ */
+@Service
+public class AirQualityStreamService {
+
+    private static final int FLUSH_ROWS = 1000;
+
+    private final AirQualityRepository airQualityRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readOnlyTransaction;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public AirQualityStreamService(AirQualityRepository airQualityRepository,
+                                   ObjectMapper objectMapper,
+                                   PlatformTransactionManager transactionManager) {
+        this.airQualityRepository = airQualityRepository;
+        this.objectMapper = objectMapper;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Writes the rows of {@code [startDate, endDate]} as one JSON array, or as
+     * newline-delimited JSON with one object per line if {@code ndjson} is set.
+     */
+    public void writeDateRange(LocalDate startDate, LocalDate endDate,
+                               OutputStream out, boolean ndjson) throws IOException {
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<AirQualityData> rows = airQualityRepository.streamByDateRange(startDate, endDate);
+                     JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                    if (ndjson) {
+                        // Objects are separated by the newlines alone, not the default space.
+                        generator.setRootValueSeparator(null);
+                    }
+                    writeRows(rows, generator, ndjson);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void writeRows(Stream<AirQualityData> rows, JsonGenerator generator, boolean ndjson) throws IOException {
+        if (!ndjson) {
+            generator.writeStartArray();
+        }
+        int written = 0;
+        var it = rows.iterator();
+        while (it.hasNext()) {
+            AirQualityData data = it.next();
+            generator.writeObject(data);
+            if (ndjson) {
+                generator.writeRaw('\n');
+            }
+            entityManager.detach(data);
+            if (++written % FLUSH_ROWS == 0) {
+                generator.flush();
+            }
+        }
+        if (!ndjson) {
+            generator.writeEndArray();
+        }
+        generator.flush();
+    }
+}
@@ -0,0 +1,88 @@
+package com.air.quality.prediction.service;
+
+import com.air.quality.prediction.export.ColumnarWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Exports raw measurements in the compact columnar format of {@link ColumnarWriter}.
+ * <p>
+ * Rows are read from a server-side cursor in (date, time, id) order and written a block
+ * at a time, so memory stays flat however long the range is.
+ */
+@Service
+public class ColumnarExportService {
+
+    public static final String MEDIA_TYPE = "application/vnd.airquality.columnar";
+
+    private static final int FETCH_SIZE = 5000;
+    private static final Set<String> TEXT_FIELDS = Set.of("mrk", "sourceFile", "aqiPollutant");
+
+    private final JdbcTemplate cursorTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+
+    @Autowired
+    public ColumnarExportService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.cursorTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.cursorTemplate.setFetchSize(FETCH_SIZE);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Writes the rows of {@code [startDate, endDate]} with the given fields, all of them if
+     * none are given. The output is not closed.
+     *
+     * @throws IllegalArgumentException for unknown fields, before anything is written
+     */
+    public void export(LocalDate startDate, LocalDate endDate, List<String> fields, OutputStream out)
+            throws IOException {
+        List<String> selected = MeasurementQueryService.resolveFields(fields);
+        List<ColumnarWriter.Column> columns = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT id, date, time");
+        for (String field : selected) {
+            columns.add(new ColumnarWriter.Column(field, TEXT_FIELDS.contains(field)
+                    ? ColumnarWriter.ColumnType.TEXT : ColumnarWriter.ColumnType.DOUBLE));
+            sql.append(", ").append(MeasurementQueryService.columnOf(field));
+        }
+        sql.append(" FROM air_quality_data WHERE date BETWEEN ? AND ? ORDER BY date, time, id");
+
+        ColumnarWriter writer = new ColumnarWriter(out, columns);
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> cursorTemplate.query(sql.toString(), rs -> {
+                try {
+                    writer.startRow(rs.getLong(1), rs.getObject(2, LocalDate.class)
+                            .atTime(rs.getObject(3, LocalTime.class)));
+                    for (int c = 0; c < columns.size(); c++) {
+                        if (columns.get(c).type() == ColumnarWriter.ColumnType.TEXT) {
+                            writer.setText(c, rs.getString(4 + c));
+                        } else {
+                            double value = rs.getDouble(4 + c);
+                            if (!rs.wasNull()) {
+                                writer.setDouble(c, value);
+                            }
+                        }
+                    }
+                    writer.endRow();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, startDate, endDate));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.finish();
+    }
+}
@@ -0,0 +1,169 @@
+package com.air.quality.prediction.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Watches the CSV directory for new or modified files and hands them to
+ * {@link AirQualityService#submitCsvFile} once they have stopped changing.
+ * <p>
+ * A file is considered fully written when its size and modification time have not
+ * changed for {@code csv.monitor.stable-millis}. The periodic scan in
+ * {@link AirQualityService#checkForNewFiles()} remains as a low-frequency safety net for
+ * missed or overflowed events.
+ */
+@Service
+public class CsvDirectoryWatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(CsvDirectoryWatcher.class);
+
+    private record FileSnapshot(long size, long lastModified, long observedAt) {
+    }
+
+    @Value("${csv.monitor.directory}")
+    private String csvDirectory;
+
+    @Value("${csv.monitor.watch.enabled:true}")
+    private boolean enabled;
+
+    @Value("${csv.monitor.stable-millis:2000}")
+    private long stableMillis;
+
+    private final AirQualityService airQualityService;
+    private final Map<Path, FileSnapshot> pendingFiles = new ConcurrentHashMap<>();
+
+    private WatchService watchService;
+    private Thread watchThread;
+
+    @Autowired
+    public CsvDirectoryWatcher(AirQualityService airQualityService) {
+        this.airQualityService = airQualityService;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            logger.info("CSV directory watching is disabled, relying on periodic scans");
+            return;
+        }
+
+        Path dir = Paths.get(csvDirectory).toAbsolutePath();
+        try {
+            Files.createDirectories(dir);
+            watchService = FileSystems.getDefault().newWatchService();
+            dir.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            logger.error("Could not watch CSV directory {}, relying on periodic scans", dir, e);
+            return;
+        }
+
+        watchThread = new Thread(() -> watch(dir), "csv-directory-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+        logger.info("Watching CSV directory: {}", dir);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.warn("Error closing CSV directory watcher", e);
+        }
+        watchThread.interrupt();
+    }
+
+    private void watch(Path dir) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        logger.warn("CSV directory watcher overflowed, scanning {}", dir);
+                        scanDirectory(dir);
+                        continue;
+                    }
+                    Path file = dir.resolve((Path) event.context());
+                    if (isCsv(file)) {
+                        pendingFiles.putIfAbsent(file, new FileSnapshot(-1, -1, System.currentTimeMillis()));
+                    }
+                }
+                if (!key.reset()) {
+                    logger.error("CSV directory {} is no longer accessible, relying on periodic scans", dir);
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void scanDirectory(Path dir) {
+        try (var files = Files.list(dir)) {
+            files.filter(CsvDirectoryWatcher::isCsv)
+                    .forEach(file -> pendingFiles.putIfAbsent(file,
+                            new FileSnapshot(-1, -1, System.currentTimeMillis())));
+        } catch (IOException e) {
+            logger.error("Error scanning CSV directory {}", dir, e);
+        }
+    }
+
+    /**
+     * Processes pending files whose size and modification time have been stable for
+     * {@code csv.monitor.stable-millis}.
+     */
+    @Scheduled(fixedDelayString = "${csv.monitor.watch.poll-millis:1000}")
+    public void processStableFiles() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, FileSnapshot>> it = pendingFiles.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, FileSnapshot> entry = it.next();
+            Path file = entry.getKey();
+            FileSnapshot previous = entry.getValue();
+            FileSnapshot current;
+            try {
+                current = new FileSnapshot(Files.size(file), Files.getLastModifiedTime(file).toMillis(), now);
+            } catch (IOException e) {
+                // Deleted or renamed before it settled.
+                it.remove();
+                continue;
+            }
+
+            if (current.size() != previous.size() || current.lastModified() != previous.lastModified()) {
+                entry.setValue(current);
+            } else if (now - previous.observedAt() >= stableMillis) {
+                it.remove();
+                airQualityService.submitCsvFile(file.toFile());
+            }
+        }
+    }
+
+    private static boolean isCsv(Path file) {
+        return file.getFileName().toString().toLowerCase().endsWith(".csv");
+    }
+}
@@ -0,0 +1,335 @@
+package com.air.quality.prediction.service;
+
+import com.air.quality.prediction.aqi.AqiCalculator;
+import com.air.quality.prediction.dto.DailyAqiDTO;
+import com.air.quality.prediction.dto.SeriesPointDTO;
+import com.air.quality.prediction.model.AirQualityData;
+import com.air.quality.prediction.model.AirQualityParameter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Maintains {@code daily_aqi}, the air quality index of each day with the sub-index of
+ * each pollutant, following the EPA's averaging: the day's mean for PM2.5 and PM10, its
+ * highest 1-hour mean for NO2 and SO2 and its highest 8-hour mean for CO. The means come
+ * from {@link DailyStatsRollup} and {@link HourlyStatsRollup}, so the index is updated by
+ * the transaction that inserts a chunk, after those two.
+ * <p>
+ * An 8-hour window ending early in a day starts the day before, so a change to a day also
+ * updates the day after. Both rows are locked in date order first, which serialises
+ * concurrent chunks of adjacent days.
+ * <p>
+ * Rows ingested before the {@code aqi} column existed get their per-row index, and their
+ * day its row, from a backfill at startup.
+ */
+@Service
+public class DailyAqiRollup {
+
+    private static final Logger logger = LoggerFactory.getLogger(DailyAqiRollup.class);
+
+    private static final int REBUILD_DAYS_PER_TRANSACTION = 7;
+
+    private static final List<AirQualityParameter> POLLUTANTS = AqiCalculator.POLLUTANTS;
+
+    private static final String UPDATE_SQL = "UPDATE daily_aqi SET aqi = ?, pollutant = ?, " +
+            POLLUTANTS.stream().map(pollutant -> subIndexColumn(pollutant) + " = ?")
+                    .collect(Collectors.joining(", ")) +
+            " WHERE date = ?";
+
+    private static final String SELECT_SQL = "SELECT date, aqi, pollutant, " +
+            POLLUTANTS.stream().map(DailyAqiRollup::subIndexColumn).collect(Collectors.joining(", ")) +
+            " FROM daily_aqi WHERE aqi IS NOT NULL";
+
+    private static final RowMapper<DailyAqiDTO> DAY_MAPPER = (rs, rowNum) -> {
+        Map<AirQualityParameter, Integer> subIndices = new EnumMap<>(AirQualityParameter.class);
+        for (AirQualityParameter pollutant : POLLUTANTS) {
+            int index = rs.getInt(subIndexColumn(pollutant));
+            if (!rs.wasNull()) {
+                subIndices.put(pollutant, index);
+            }
+        }
+        return new DailyAqiDTO(rs.getDate("date").toLocalDate(), rs.getInt("aqi"),
+                AirQualityParameter.fromColumn(rs.getString("pollutant")), subIndices);
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final HourlyStatsRollup hourlyStatsRollup;
+    private final StatsCacheEvictor cacheEvictor;
+
+    @Autowired
+    public DailyAqiRollup(JdbcTemplate jdbcTemplate,
+                          TransactionTemplate transactionTemplate,
+                          HourlyStatsRollup hourlyStatsRollup,
+                          StatsCacheEvictor cacheEvictor) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.hourlyStatsRollup = hourlyStatsRollup;
+        this.cacheEvictor = cacheEvictor;
+    }
+
+    /**
+     * Updates the days of a chunk. Must run in the transaction that inserts it, after the
+     * daily and hourly rollups.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void add(List<AirQualityData> chunk) {
+        Set<LocalDate> dates = new HashSet<>();
+        for (AirQualityData data : chunk) {
+            dates.add(data.getDate());
+        }
+        recompute(dates);
+    }
+
+    /**
+     * Recomputes the given days, and the days after them, from the daily and hourly
+     * rollups, which must already reflect any change to these days.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recompute(Collection<LocalDate> dates) {
+        if (dates.isEmpty()) {
+            return;
+        }
+        TreeSet<LocalDate> affected = new TreeSet<>();
+        for (LocalDate date : dates) {
+            affected.add(date);
+            affected.add(date.plusDays(1));
+        }
+        lock(affected);
+
+        Map<LocalDate, Map<AirQualityParameter, Double>> concentrations = new TreeMap<>();
+        for (LocalDate date : affected) {
+            concentrations.put(date, new EnumMap<>(AirQualityParameter.class));
+        }
+        Set<LocalDate> withData = new HashSet<>();
+        jdbcTemplate.query(connection -> {
+            var ps = connection.prepareStatement("SELECT date, parameter, value_sum / sample_count AS mean " +
+                    "FROM daily_stats WHERE date = ANY (?) AND sample_count > 0");
+            ps.setArray(1, connection.createArrayOf("date", affected.stream().map(Date::valueOf).toArray()));
+            return ps;
+        }, rs -> {
+            LocalDate date = rs.getDate("date").toLocalDate();
+            withData.add(date);
+            AirQualityParameter parameter = AirQualityParameter.fromColumn(rs.getString("parameter"));
+            if (parameter == AirQualityParameter.PM25 || parameter == AirQualityParameter.PM10) {
+                concentrations.get(date).put(parameter, rs.getDouble("mean"));
+            }
+        });
+        for (List<LocalDate> run : consecutiveRuns(affected)) {
+            LocalDate first = run.get(0);
+            LocalDate last = run.get(run.size() - 1);
+            putDailyMaximum(concentrations, AirQualityParameter.NO2, first, last, HourlyStatsRollup.Window.ONE_HOUR);
+            putDailyMaximum(concentrations, AirQualityParameter.SO2, first, last, HourlyStatsRollup.Window.ONE_HOUR);
+            putDailyMaximum(concentrations, AirQualityParameter.CO, first, last, HourlyStatsRollup.Window.EIGHT_HOURS);
+        }
+
+        List<Object[]> updates = new ArrayList<>();
+        concentrations.forEach((date, byPollutant) -> {
+            // A day without rows of its own gets no index from the previous day's windows.
+            Map<AirQualityParameter, Integer> subIndices = new EnumMap<>(AirQualityParameter.class);
+            if (withData.contains(date)) {
+                byPollutant.forEach((pollutant, value) ->
+                        subIndices.put(pollutant, AqiCalculator.subIndex(pollutant, value)));
+            }
+            AqiCalculator.Result result = AqiCalculator.of(subIndices);
+            List<Object> row = new ArrayList<>();
+            row.add(result == null ? null : result.aqi());
+            row.add(result == null ? null : result.pollutant().getColumn());
+            for (AirQualityParameter pollutant : POLLUTANTS) {
+                row.add(subIndices.get(pollutant));
+            }
+            row.add(Date.valueOf(date));
+            updates.add(row.toArray());
+        });
+        int[] types = new int[POLLUTANTS.size() + 3];
+        Arrays.fill(types, Types.SMALLINT);
+        types[1] = Types.VARCHAR;
+        types[types.length - 1] = Types.DATE;
+        jdbcTemplate.batchUpdate(UPDATE_SQL, updates, types);
+        cacheEvictor.evictDates(affected);
+    }
+
+    /**
+     * Removes the days from {@code from} to {@code to}, whose raw rows were archived.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void removeRange(LocalDate from, LocalDate to) {
+        jdbcTemplate.update("DELETE FROM daily_aqi WHERE date BETWEEN ? AND ?", from, to);
+    }
+
+    // The highest rolling mean of each day from first to last.
+    private void putDailyMaximum(Map<LocalDate, Map<AirQualityParameter, Double>> concentrations,
+                                 AirQualityParameter pollutant, LocalDate first, LocalDate last,
+                                 HourlyStatsRollup.Window window) {
+        for (SeriesPointDTO point : hourlyStatsRollup.getRollingMeans(pollutant, first, last, window)) {
+            concentrations.get(point.getTime().toLocalDate()).merge(pollutant, point.getValue(), Math::max);
+        }
+    }
+
+    private static List<List<LocalDate>> consecutiveRuns(TreeSet<LocalDate> dates) {
+        List<List<LocalDate>> runs = new ArrayList<>();
+        List<LocalDate> run = new ArrayList<>();
+        for (LocalDate date : dates) {
+            if (!run.isEmpty() && !run.get(run.size() - 1).plusDays(1).equals(date)) {
+                runs.add(run);
+                run = new ArrayList<>();
+            }
+            run.add(date);
+        }
+        runs.add(run);
+        return runs;
+    }
+
+    // Creates missing rows, then locks the rows of the given days in date order.
+    private void lock(TreeSet<LocalDate> dates) {
+        List<Object[]> placeholders = dates.stream().map(date -> new Object[]{Date.valueOf(date)}).toList();
+        jdbcTemplate.batchUpdate("INSERT INTO daily_aqi (date) VALUES (?) ON CONFLICT (date) DO NOTHING",
+                placeholders);
+        jdbcTemplate.query(connection -> {
+            var ps = connection.prepareStatement("SELECT date FROM daily_aqi WHERE date = ANY (?) " +
+                    "ORDER BY date FOR UPDATE");
+            ps.setArray(1, connection.createArrayOf("date", dates.stream().map(Date::valueOf).toArray()));
+            return ps;
+        }, rs -> {
+        });
+    }
+
+    private static String subIndexColumn(AirQualityParameter pollutant) {
+        return pollutant.getColumn() + "_aqi";
+    }
+
+    /**
+     * The index of each of the given days that has one.
+     */
+    public Map<LocalDate, DailyAqiDTO> getDailyAqi(Collection<LocalDate> dates) {
+        Map<LocalDate, DailyAqiDTO> result = new HashMap<>();
+        if (dates.isEmpty()) {
+            return result;
+        }
+        jdbcTemplate.query(connection -> {
+            var ps = connection.prepareStatement(SELECT_SQL + " AND date = ANY (?)");
+            ps.setArray(1, connection.createArrayOf("date", dates.stream().map(Date::valueOf).toArray()));
+            return ps;
+        }, rs -> {
+            DailyAqiDTO day = DAY_MAPPER.mapRow(rs, 0);
+            result.put(day.getDate(), day);
+        });
+        return result;
+    }
+
+    /**
+     * The index of each day from {@code startDate} to {@code endDate} that has one, by date.
+     */
+    public List<DailyAqiDTO> getRange(LocalDate startDate, LocalDate endDate) {
+        return jdbcTemplate.query(SELECT_SQL + " AND date BETWEEN ? AND ? ORDER BY date", DAY_MAPPER,
+                startDate, endDate);
+    }
+
+    /**
+     * Fills in the per-row index of days ingested before it existed, one day per
+     * transaction, then their daily index.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        Thread.ofVirtual().name("aqi-backfill").start(() -> {
+            try {
+                List<LocalDate> pending = jdbcTemplate.queryForList(
+                        "SELECT date FROM daily_aqi WHERE rows_pending ORDER BY date", LocalDate.class);
+                if (pending.isEmpty()) {
+                    return;
+                }
+                long start = System.currentTimeMillis();
+                long rows = 0;
+                for (LocalDate date : pending) {
+                    rows += transactionTemplate.execute(status -> backfillDay(date));
+                }
+                logger.info("Backfilled the air quality index of {} rows over {} days in {} ms", rows,
+                        pending.size(), System.currentTimeMillis() - start);
+            } catch (RuntimeException e) {
+                logger.error("Backfilling the air quality index failed", e);
+            }
+        });
+    }
+
+    private int backfillDay(LocalDate date) {
+        List<Long> ids = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+        List<String> pollutants = new ArrayList<>();
+        AirQualityData data = new AirQualityData();
+        jdbcTemplate.query(connection -> {
+            var ps = connection.prepareStatement("SELECT id, " + POLLUTANTS.stream()
+                    .map(AirQualityParameter::getColumn).collect(Collectors.joining(", ")) +
+                    " FROM air_quality_data WHERE date = ?");
+            ps.setObject(1, date);
+            ps.setFetchSize(5000);
+            return ps;
+        }, rs -> {
+            int column = 2;
+            for (AirQualityParameter pollutant : POLLUTANTS) {
+                double value = rs.getDouble(column++);
+                pollutant.set(data, rs.wasNull() ? null : value);
+            }
+            AqiCalculator.apply(data);
+            ids.add(rs.getLong(1));
+            indices.add(data.getAqi());
+            pollutants.add(data.getAqiPollutant());
+        });
+
+        // One statement for the whole day rather than a batch of single-row updates.
+        jdbcTemplate.update(connection -> {
+            var ps = connection.prepareStatement("UPDATE air_quality_data a SET aqi = v.aqi, " +
+                    "aqi_pollutant = v.pollutant FROM unnest(?::bigint[], ?::smallint[], ?::varchar[]) " +
+                    "AS v(id, aqi, pollutant) WHERE a.date = ? AND a.id = v.id");
+            ps.setArray(1, connection.createArrayOf("bigint", ids.toArray()));
+            ps.setArray(2, connection.createArrayOf("smallint", indices.toArray()));
+            ps.setArray(3, connection.createArrayOf("varchar", pollutants.toArray()));
+            ps.setObject(4, date);
+            return ps;
+        });
+        recompute(List.of(date));
+        jdbcTemplate.update("UPDATE daily_aqi SET rows_pending = FALSE WHERE date = ?", date);
+        return ids.size();
+    }
+
+    /**
+     * Recomputes every day's index from the rollups, a few days per transaction.
+     *
+     * @return the number of days rebuilt
+     */
+    public int rebuild() {
+        List<LocalDate> dates = jdbcTemplate.queryForList(
+                "SELECT DISTINCT date FROM daily_stats ORDER BY date", LocalDate.class);
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update("DELETE FROM daily_aqi d " +
+                "WHERE NOT d.rows_pending AND NOT EXISTS (SELECT 1 FROM daily_stats s WHERE s.date = d.date)"));
+        for (int i = 0; i < dates.size(); i += REBUILD_DAYS_PER_TRANSACTION) {
+            List<LocalDate> batch = dates.subList(i, Math.min(i + REBUILD_DAYS_PER_TRANSACTION, dates.size()));
+            transactionTemplate.executeWithoutResult(status -> recompute(batch));
+        }
+        return dates.size();
+    }
+}
@@ -0,0 +1,301 @@
+package com.air.quality.prediction.service;
+
+import com.air.quality.prediction.model.AirQualityData;
+import com.air.quality.prediction.model.AirQualityParameter;
+import com.air.quality.prediction.sketch.TDigest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Maintains {@code daily_sketch}, a t-digest of each parameter per day, from which
+ * percentiles of any day or range of days are estimated without reading raw rows.
+ * <p>
+ * Like {@link DailyStatsRollup}, each chunk is folded in by the transaction that inserts
+ * it. A digest cannot be updated in SQL, so the affected rows are locked, merged in Java
+ * and written back. Rows are first created empty if missing so there is always a row to
+ * lock, and always locked in (date, parameter) order.
+ * <p>
+ * Days ingested before this table existed are backfilled from the raw rows at startup.
+ */
+@Service
+public class DailyQuantileRollup {
+
+    private static final Logger logger = LoggerFactory.getLogger(DailyQuantileRollup.class);
+
+    public static final List<Double> DEFAULT_QUANTILES = List.of(0.5, 0.95, 0.99);
+
+    private static final byte[] EMPTY = new TDigest().toBytes();
+
+    private static final int BACKFILL_DAYS_PER_TRANSACTION = 7;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final StatsCacheEvictor cacheEvictor;
+    private static final List<AirQualityParameter> PARAMETERS = AirQualityParameter.SUMMARISED;
+
+    @Autowired
+    public DailyQuantileRollup(JdbcTemplate jdbcTemplate,
+                               TransactionTemplate transactionTemplate,
+                               StatsCacheEvictor cacheEvictor) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.cacheEvictor = cacheEvictor;
+    }
+
+    /**
+     * Folds a chunk into the day digests. Must run in the transaction that inserts it.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void add(List<AirQualityData> chunk) {
+        Map<LocalDate, TDigest[]> days = new TreeMap<>();
+        for (AirQualityData data : chunk) {
+            TDigest[] day = days.computeIfAbsent(data.getDate(), date -> newDay());
+            for (AirQualityParameter parameter : PARAMETERS) {
+                Double value = parameter.get(data);
+                if (value != null) {
+                    TDigest digest = day[parameter.ordinal()];
+                    if (digest == null) {
+                        digest = day[parameter.ordinal()] = new TDigest();
+                    }
+                    digest.add(value);
+                }
+            }
+        }
+
+        Map<LocalDate, TDigest[]> stored = lock(days.keySet());
+        List<Object[]> updates = new ArrayList<>();
+        days.forEach((date, day) -> {
+            TDigest[] current = stored.get(date);
+            for (AirQualityParameter parameter : PARAMETERS) {
+                TDigest digest = day[parameter.ordinal()];
+                if (digest != null) {
+                    TDigest merged = current[parameter.ordinal()];
+                    merged.merge(digest);
+                    updates.add(new Object[]{merged.toBytes(), Date.valueOf(date), parameter.getColumn()});
+                }
+            }
+        });
+        jdbcTemplate.batchUpdate("UPDATE daily_sketch SET digest = ? WHERE date = ? AND parameter = ?", updates);
+        cacheEvictor.evictDates(days.keySet());
+    }
+
+    /**
+     * Rebuilds the digests of the given days from the raw rows.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recompute(Collection<LocalDate> dates) {
+        if (dates.isEmpty()) {
+            return;
+        }
+        // Locking first means every chunk of these days has either committed, and is read
+        // below, or waits and is merged in on top afterwards.
+        lock(dates);
+        Map<LocalDate, TDigest[]> days = new TreeMap<>();
+        for (LocalDate date : dates) {
+            TDigest[] day = newDay();
+            for (AirQualityParameter parameter : PARAMETERS) {
+                day[parameter.ordinal()] = new TDigest();
+            }
+            days.put(date, day);
+        }
+        jdbcTemplate.query(connection -> {
+            var ps = connection.prepareStatement("SELECT date, " + PARAMETERS.stream()
+                    .map(AirQualityParameter::getColumn).collect(Collectors.joining(", ")) +
+                    " FROM air_quality_data WHERE date = ANY (?)");
+            ps.setArray(1, connection.createArrayOf("date", dates.stream().map(Date::valueOf).toArray()));
+            ps.setFetchSize(5000);
+            return ps;
+        }, rs -> {
+            TDigest[] day = days.get(rs.getDate(1).toLocalDate());
+            int column = 2;
+            for (AirQualityParameter parameter : PARAMETERS) {
+                double value = rs.getDouble(column++);
+                if (!rs.wasNull()) {
+                    day[parameter.ordinal()].add(value);
+                }
+            }
+        });
+
+        List<Object[]> updates = new ArrayList<>();
+        days.forEach((date, day) -> {
+            for (AirQualityParameter parameter : PARAMETERS) {
+                updates.add(new Object[]{day[parameter.ordinal()].toBytes(), Date.valueOf(date), parameter.getColumn()});
+            }
+        });
+        jdbcTemplate.batchUpdate("UPDATE daily_sketch SET digest = ? WHERE date = ? AND parameter = ?", updates);
+        cacheEvictor.evictDates(dates);
+    }
+
+    /**
+     * Removes the days from {@code from} to {@code to}, whose raw rows were archived.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void removeRange(LocalDate from, LocalDate to) {
+        jdbcTemplate.update("DELETE FROM daily_sketch WHERE date BETWEEN ? AND ?", from, to);
+    }
+
+    // Creates missing rows empty, then locks and reads the rows of the given days.
+    private Map<LocalDate, TDigest[]> lock(Collection<LocalDate> dates) {
+        TreeSet<LocalDate> sorted = new TreeSet<>(dates);
+        List<Object[]> placeholders = new ArrayList<>();
+        for (LocalDate date : sorted) {
+            for (AirQualityParameter parameter : PARAMETERS) {
+                placeholders.add(new Object[]{Date.valueOf(date), parameter.getColumn(), EMPTY});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO daily_sketch (date, parameter, digest) VALUES (?, ?, ?) " +
+                "ON CONFLICT (date, parameter) DO NOTHING", placeholders);
+
+        Map<LocalDate, TDigest[]> stored = new HashMap<>();
+        jdbcTemplate.query(connection -> {
+            var ps = connection.prepareStatement("SELECT date, parameter, digest FROM daily_sketch " +
+                    "WHERE date = ANY (?) ORDER BY date, parameter FOR UPDATE");
+            ps.setArray(1, connection.createArrayOf("date", sorted.stream().map(Date::valueOf).toArray()));
+            return ps;
+        }, rs -> {
+            AirQualityParameter parameter = AirQualityParameter.fromColumn(rs.getString("parameter"));
+            if (parameter != null) {
+                stored.computeIfAbsent(rs.getDate("date").toLocalDate(), d -> newDay())[parameter.ordinal()] =
+                        TDigest.fromBytes(rs.getBytes("digest"));
+            }
+        });
+        return stored;
+    }
+
+    // One slot per parameter, indexed by ordinal.
+    private static TDigest[] newDay() {
+        return new TDigest[AirQualityParameter.all().size()];
+    }
+
+    /**
+     * Percentiles of each parameter per day, for days that have a digest.
+     */
+    public Map<LocalDate, Map<AirQualityParameter, Map<String, Double>>> getDailyPercentiles(
+            Collection<LocalDate> dates) {
+        Map<LocalDate, Map<AirQualityParameter, Map<String, Double>>> result = new HashMap<>();
+        if (dates.isEmpty()) {
+            return result;
+        }
+        jdbcTemplate.query(connection -> {
+            var ps = connection.prepareStatement("SELECT date, parameter, digest FROM daily_sketch " +
+                    "WHERE date = ANY (?) ORDER BY date, parameter");
+            ps.setArray(1, connection.createArrayOf("date", dates.stream().map(Date::valueOf).toArray()));
+            return ps;
+        }, rs -> {
+            AirQualityParameter parameter = AirQualityParameter.fromColumn(rs.getString("parameter"));
+            TDigest digest = TDigest.fromBytes(rs.getBytes("digest"));
+            if (parameter != null && digest.size() > 0) {
+                result.computeIfAbsent(rs.getDate("date").toLocalDate(), d -> new EnumMap<>(AirQualityParameter.class))
+                        .put(parameter, percentiles(digest, DEFAULT_QUANTILES));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Merges the day digests of {@code [startDate, endDate]} for each of {@code parameters}.
+     * Parameters without values in the range are left out.
+     */
+    public Map<AirQualityParameter, TDigest> getRangeDigests(LocalDate startDate, LocalDate endDate,
+                                                             List<AirQualityParameter> parameters) {
+        Map<AirQualityParameter, TDigest> merged = new EnumMap<>(AirQualityParameter.class);
+        jdbcTemplate.query(connection -> {
+            var ps = connection.prepareStatement("SELECT parameter, digest FROM daily_sketch " +
+                    "WHERE date BETWEEN ? AND ? AND parameter = ANY (?)");
+            ps.setObject(1, startDate);
+            ps.setObject(2, endDate);
+            ps.setArray(3, connection.createArrayOf("varchar",
+                    parameters.stream().map(AirQualityParameter::getColumn).toArray()));
+            return ps;
+        }, rs -> {
+            merged.computeIfAbsent(AirQualityParameter.fromColumn(rs.getString("parameter")), p -> new TDigest())
+                    .merge(TDigest.fromBytes(rs.getBytes("digest")));
+        });
+        Map<AirQualityParameter, TDigest> result = new EnumMap<>(AirQualityParameter.class);
+        for (AirQualityParameter parameter : parameters) {
+            TDigest digest = merged.get(parameter);
+            if (digest != null && digest.size() > 0) {
+                result.put(parameter, digest);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Quantiles of a digest keyed like {@code p50}, {@code p95} or {@code p99.9}.
+     */
+    public static Map<String, Double> percentiles(TDigest digest, List<Double> quantiles) {
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (double q : quantiles) {
+            result.put(percentileKey(q), digest.quantile(q));
+        }
+        return result;
+    }
+
+    static String percentileKey(double q) {
+        String percent = String.format(Locale.ROOT, "%.3f", q * 100).replaceAll("\\.?0+$", "");
+        return "p" + percent;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        Thread.ofVirtual().name("quantile-backfill").start(() -> {
+            try {
+                List<LocalDate> missing = jdbcTemplate.queryForList("SELECT DISTINCT s.date FROM daily_stats s " +
+                        "WHERE NOT EXISTS (SELECT 1 FROM daily_sketch k WHERE k.date = s.date) ORDER BY s.date",
+                        LocalDate.class);
+                if (missing.isEmpty()) {
+                    return;
+                }
+                long start = System.currentTimeMillis();
+                for (int i = 0; i < missing.size(); i += BACKFILL_DAYS_PER_TRANSACTION) {
+                    List<LocalDate> batch = missing.subList(i, Math.min(i + BACKFILL_DAYS_PER_TRANSACTION, missing.size()));
+                    transactionTemplate.executeWithoutResult(status -> recompute(batch));
+                }
+                logger.info("Backfilled daily_sketch for {} days in {} ms", missing.size(),
+                        System.currentTimeMillis() - start);
+            } catch (RuntimeException e) {
+                logger.error("Backfilling daily_sketch failed", e);
+            }
+        });
+    }
+
+    /**
+     * Recomputes every day's digests from the raw rows, a few days per transaction.
+     *
+     * @return the number of days rebuilt
+     */
+    public int rebuild() {
+        List<LocalDate> dates = jdbcTemplate.queryForList(
+                "SELECT DISTINCT date FROM air_quality_data ORDER BY date", LocalDate.class);
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update("DELETE FROM daily_sketch k " +
+                "WHERE NOT EXISTS (SELECT 1 FROM air_quality_data a WHERE a.date = k.date)"));
+        for (int i = 0; i < dates.size(); i += BACKFILL_DAYS_PER_TRANSACTION) {
+            List<LocalDate> batch = dates.subList(i, Math.min(i + BACKFILL_DAYS_PER_TRANSACTION, dates.size()));
+            transactionTemplate.executeWithoutResult(status -> recompute(batch));
+        }
+        return dates.size();
+    }
+}
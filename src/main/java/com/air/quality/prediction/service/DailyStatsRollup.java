@@ -0,0 +1,320 @@
+package com.air.quality.prediction.service;
+
+import com.air.quality.prediction.dto.DailyStatsDTO;
+import com.air.quality.prediction.dto.RangeStatsDTO;
+import com.air.quality.prediction.model.AirQualityData;
+import com.air.quality.prediction.model.AirQualityParameter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Maintains {@code daily_stats}, which holds the count, sum, sum of squares, minimum and
+ * maximum of each parameter per day, so daily statistics are a primary key lookup rather
+ * than a scan of the day's raw rows, and those of any range of days are merged from one
+ * row per day and parameter.
+ * <p>
+ * Each ingested chunk is folded in by the transaction that inserts it. Sums and counts
+ * can be added up, but minimums and maximums cannot be taken back, so days that lose
+ * rows are recomputed from {@code air_quality_data}.
+ */
+@Service
+public class DailyStatsRollup {
+
+    private static final Logger logger = LoggerFactory.getLogger(DailyStatsRollup.class);
+
+    /**
+     * The periods a range of days is summarised by.
+     */
+    public enum Granularity {
+        DAY("day", "date"),
+        WEEK("week", "date_trunc('week', date)::date"),
+        MONTH("month", "date_trunc('month', date)::date"),
+        TOTAL("total", "NULL::date");
+
+        private final String code;
+        private final String periodSql;
+
+        Granularity(String code, String periodSql) {
+            this.code = code;
+            this.periodSql = periodSql;
+        }
+
+        public static Granularity fromCode(String code) {
+            for (Granularity granularity : values()) {
+                if (granularity.code.equalsIgnoreCase(code)) {
+                    return granularity;
+                }
+            }
+            throw new IllegalArgumentException("Unknown granularity: " + code + ", expected day, week, month or total");
+        }
+
+        // The last day of the period starting at start; weeks start on Monday.
+        LocalDate periodEnd(LocalDate start, LocalDate rangeEnd) {
+            return switch (this) {
+                case DAY -> start;
+                case WEEK -> start.plusDays(6);
+                case MONTH -> start.withDayOfMonth(start.lengthOfMonth());
+                case TOTAL -> rangeEnd;
+            };
+        }
+    }
+
+    private static final List<AirQualityParameter> PARAMETERS = AirQualityParameter.SUMMARISED;
+
+    // Rows conflicting on (date, parameter) are merged. Concurrent chunks always upsert in
+    // date, then parameter order, so they wait on each other rather than deadlock.
+    private static final String UPSERT_SQL = "INSERT INTO daily_stats " +
+            "(date, parameter, sample_count, value_sum, value_sum_squares, min_value, max_value) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (date, parameter) DO UPDATE SET " +
+            "sample_count = daily_stats.sample_count + EXCLUDED.sample_count, " +
+            "value_sum = daily_stats.value_sum + EXCLUDED.value_sum, " +
+            "value_sum_squares = daily_stats.value_sum_squares + EXCLUDED.value_sum_squares, " +
+            "min_value = LEAST(daily_stats.min_value, EXCLUDED.min_value), " +
+            "max_value = GREATEST(daily_stats.max_value, EXCLUDED.max_value)";
+
+    private static final String AGGREGATE_SQL = "INSERT INTO daily_stats " +
+            "(date, parameter, sample_count, value_sum, value_sum_squares, min_value, max_value) " +
+            "SELECT a.date, v.parameter, COUNT(*), SUM(v.value), SUM(v.value * v.value), MIN(v.value), MAX(v.value) " +
+            "FROM air_quality_data a CROSS JOIN LATERAL (VALUES " +
+            PARAMETERS.stream()
+                    .map(parameter -> "('" + parameter.getColumn() + "', a." + parameter.getColumn() + ")")
+                    .collect(Collectors.joining(", ")) +
+            ") AS v(parameter, value) " +
+            "WHERE v.value IS NOT NULL";
+
+    private static final String SELECT_SQL = "SELECT date, parameter, sample_count, value_sum, min_value, max_value " +
+            "FROM daily_stats WHERE date = ?";
+
+    // The inner query walks the primary key index backwards and stops after N dates.
+    private static final String SELECT_RECENT_SQL = "SELECT date, parameter, sample_count, value_sum, min_value, max_value " +
+            "FROM daily_stats " +
+            "WHERE date IN (SELECT date FROM daily_stats GROUP BY date ORDER BY date DESC LIMIT ?) " +
+            "ORDER BY date DESC";
+
+    private static final class Accumulator {
+        long count;
+        double sum;
+        double sumSquares;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        void add(double value) {
+            count++;
+            sum += value;
+            sumSquares += value * value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StatsCacheEvictor cacheEvictor;
+
+    @Autowired
+    public DailyStatsRollup(JdbcTemplate jdbcTemplate, StatsCacheEvictor cacheEvictor) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cacheEvictor = cacheEvictor;
+    }
+
+    /**
+     * Resolves the names of parameters kept in {@code daily_stats}, all of them if
+     * {@code names} is null or empty.
+     *
+     * @throws IllegalArgumentException for a name that is not one of them
+     */
+    public static List<AirQualityParameter> resolve(List<String> names) {
+        if (names == null || names.isEmpty()) {
+            return PARAMETERS;
+        }
+        List<AirQualityParameter> resolved = new ArrayList<>(names.size());
+        for (String name : names) {
+            AirQualityParameter parameter = AirQualityParameter.fromColumn(name);
+            if (parameter == null || !parameter.isSummarised()) {
+                throw new IllegalArgumentException("Unknown parameter: " + name);
+            }
+            resolved.add(parameter);
+        }
+        return resolved;
+    }
+
+    /**
+     * Folds a chunk into the rollup. Must run in the transaction that inserts the chunk.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void add(List<AirQualityData> chunk) {
+        Map<LocalDate, Accumulator[]> days = new TreeMap<>();
+        for (AirQualityData data : chunk) {
+            Accumulator[] day = days.computeIfAbsent(data.getDate(),
+                    date -> new Accumulator[AirQualityParameter.all().size()]);
+            for (AirQualityParameter parameter : PARAMETERS) {
+                Double value = parameter.get(data);
+                if (value == null) {
+                    continue;
+                }
+                Accumulator acc = day[parameter.ordinal()];
+                if (acc == null) {
+                    acc = day[parameter.ordinal()] = new Accumulator();
+                }
+                acc.add(value);
+            }
+        }
+
+        List<Object[]> rows = new ArrayList<>();
+        days.forEach((date, day) -> {
+            for (AirQualityParameter parameter : PARAMETERS) {
+                Accumulator acc = day[parameter.ordinal()];
+                if (acc != null) {
+                    rows.add(new Object[]{Date.valueOf(date), parameter.getColumn(), acc.count, acc.sum,
+                            acc.sumSquares, acc.min, acc.max});
+                }
+            }
+        });
+        jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+        cacheEvictor.evictDates(days.keySet());
+    }
+
+    /**
+     * Recomputes the given days from the raw rows, e.g. after some of their rows were
+     * deleted.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recompute(Collection<LocalDate> dates) {
+        if (dates.isEmpty()) {
+            return;
+        }
+        Date[] days = dates.stream().map(Date::valueOf).toArray(Date[]::new);
+        jdbcTemplate.update(connection -> {
+            var ps = connection.prepareStatement("DELETE FROM daily_stats WHERE date = ANY (?)");
+            ps.setArray(1, connection.createArrayOf("date", days));
+            return ps;
+        });
+        jdbcTemplate.update(connection -> {
+            var ps = connection.prepareStatement(AGGREGATE_SQL + " AND a.date = ANY (?) GROUP BY a.date, v.parameter");
+            ps.setArray(1, connection.createArrayOf("date", days));
+            return ps;
+        });
+        cacheEvictor.evictDates(dates);
+    }
+
+    /**
+     * Removes the days from {@code from} to {@code to}, whose raw rows were archived.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void removeRange(LocalDate from, LocalDate to) {
+        jdbcTemplate.update("DELETE FROM daily_stats WHERE date BETWEEN ? AND ?", from, to);
+        cacheEvictor.evictAll();
+    }
+
+    /**
+     * Recomputes the whole table from the raw rows. Chunks committing meanwhile wait for
+     * the rebuild and are folded in on top of it.
+     *
+     * @return the number of (date, parameter) rows written
+     */
+    @Transactional
+    public int rebuild() {
+        long start = System.currentTimeMillis();
+        jdbcTemplate.execute("LOCK TABLE daily_stats IN EXCLUSIVE MODE");
+        jdbcTemplate.update("DELETE FROM daily_stats");
+        int rows = jdbcTemplate.update(AGGREGATE_SQL + " GROUP BY a.date, v.parameter");
+        cacheEvictor.evictAll();
+        logger.info("Rebuilt daily_stats: {} rows in {} ms", rows, System.currentTimeMillis() - start);
+        return rows;
+    }
+
+    public DailyStatsDTO getDailyStats(LocalDate date) {
+        List<DailyStatsDTO> stats = query(SELECT_SQL, Date.valueOf(date));
+        return stats.isEmpty() ? new DailyStatsDTO(date) : stats.get(0);
+    }
+
+    /**
+     * Stats of the latest {@code days} days that have data, newest first, in one query.
+     */
+    public List<DailyStatsDTO> getRecentDailyStats(int days) {
+        return query(SELECT_RECENT_SQL, days);
+    }
+
+    /**
+     * The days that have data, oldest first. Read from the rollup rather than the raw rows,
+     * so a day whose rows hold no summarised value at all is not listed.
+     */
+    public List<LocalDate> getAvailableDates() {
+        return jdbcTemplate.queryForList("SELECT DISTINCT date FROM daily_stats ORDER BY date", LocalDate.class);
+    }
+
+    /**
+     * Stats of each of {@code parameters} over {@code [startDate, endDate]} per period of
+     * {@code granularity}, merged from the day rows. Periods are clipped to the range, and
+     * those without data are left out.
+     */
+    public List<RangeStatsDTO> getRangeStats(LocalDate startDate, LocalDate endDate,
+                                             Granularity granularity, List<AirQualityParameter> parameters) {
+        String sql = "SELECT " + granularity.periodSql + " AS period, parameter, SUM(sample_count) AS sample_count, " +
+                "SUM(value_sum) AS value_sum, SUM(value_sum_squares) AS value_sum_squares, " +
+                "MIN(min_value) AS min_value, MAX(max_value) AS max_value " +
+                "FROM daily_stats WHERE date BETWEEN ? AND ? AND parameter = ANY (?) " +
+                "GROUP BY period, parameter ORDER BY period, parameter";
+        Map<LocalDate, RangeStatsDTO> byPeriod = new LinkedHashMap<>();
+        jdbcTemplate.query(connection -> {
+            var ps = connection.prepareStatement(sql);
+            ps.setObject(1, startDate);
+            ps.setObject(2, endDate);
+            ps.setArray(3, connection.createArrayOf("varchar",
+                    parameters.stream().map(AirQualityParameter::getColumn).toArray()));
+            return ps;
+        }, rs -> {
+            Date period = rs.getDate("period");
+            LocalDate periodStart = period == null ? startDate : period.toLocalDate();
+            RangeStatsDTO stats = byPeriod.computeIfAbsent(periodStart, start -> {
+                LocalDate end = granularity.periodEnd(start, endDate);
+                return new RangeStatsDTO(start.isBefore(startDate) ? startDate : start,
+                        end.isAfter(endDate) ? endDate : end);
+            });
+            AirQualityParameter parameter = AirQualityParameter.fromColumn(rs.getString("parameter"));
+            long count = rs.getLong("sample_count");
+            double sum = rs.getDouble("value_sum");
+            stats.getCounts().put(parameter, count);
+            stats.getAverages().put(parameter, sum / count);
+            stats.getMinimums().put(parameter, rs.getDouble("min_value"));
+            stats.getMaximums().put(parameter, rs.getDouble("max_value"));
+            if (count > 1) {
+                // Sample standard deviation, like stddev() over the raw rows.
+                double variance = (rs.getDouble("value_sum_squares") - sum * sum / count) / (count - 1);
+                stats.getStandardDeviations().put(parameter, Math.sqrt(Math.max(0, variance)));
+            }
+        });
+        return new ArrayList<>(byPeriod.values());
+    }
+
+    private List<DailyStatsDTO> query(String sql, Object... args) {
+        Map<LocalDate, DailyStatsDTO> byDate = new LinkedHashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            LocalDate date = rs.getDate("date").toLocalDate();
+            DailyStatsDTO stats = byDate.computeIfAbsent(date, DailyStatsDTO::new);
+            AirQualityParameter parameter = AirQualityParameter.fromColumn(rs.getString("parameter"));
+            if (parameter == null) {
+                return;
+            }
+            stats.getAverages().put(parameter, rs.getDouble("value_sum") / rs.getLong("sample_count"));
+            stats.getMinimums().put(parameter, rs.getDouble("min_value"));
+            stats.getMaximums().put(parameter, rs.getDouble("max_value"));
+        }, args);
+        return new ArrayList<>(byDate.values());
+    }
+}
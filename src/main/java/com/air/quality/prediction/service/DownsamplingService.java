@@ -0,0 +1,322 @@
+package com.air.quality.prediction.service;
+
+import com.air.quality.prediction.dto.SeriesPointDTO;
+import com.air.quality.prediction.model.AirQualityParameter;
+import com.air.quality.prediction.store.RecentMeasurementStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reduces a pollutant's time series to a size a chart can use.
+ * <p>
+ * Fixed buckets are aggregated entirely in SQL, and daily buckets come straight from
+ * {@code daily_stats}. The point budget mode picks the points that best preserve the
+ * shape of the series with Largest-Triangle-Three-Buckets; when the range holds many more
+ * rows than the budget, SQL first reduces each narrow time slice to its lowest and highest
+ * point, so only a bounded number of points reach the application and no peak is averaged
+ * away before LTTB can keep it.
+ * <p>
+ * Ranges held by {@link RecentMeasurementStore} are computed the same way from memory.
+ */
+@Service
+public class DownsamplingService {
+
+    public enum Bucket {
+        ONE_MINUTE("1m", 60),
+        FIFTEEN_MINUTES("15m", 900),
+        ONE_HOUR("1h", 3600),
+        ONE_DAY("1d", 86400);
+
+        private final String code;
+        private final long seconds;
+
+        Bucket(String code, long seconds) {
+            this.code = code;
+            this.seconds = seconds;
+        }
+
+        public static Bucket fromCode(String code) {
+            for (Bucket bucket : values()) {
+                if (bucket.code.equalsIgnoreCase(code)) {
+                    return bucket;
+                }
+            }
+            throw new IllegalArgumentException("Unknown bucket: " + code + ", expected 1m, 15m, 1h or 1d");
+        }
+    }
+
+    public static final int MAX_BUCKETS = 100_000;
+    public static final int MAX_POINTS = 10_000;
+
+    // LTTB input is capped at this many points per point of output.
+    private static final int PRE_AGGREGATION_FACTOR = 10;
+
+    // Timestamps are handled as seconds since the epoch of the local date and time, which
+    // is what extract(epoch) yields for a timestamp without time zone.
+    private static final String EPOCH = "extract(epoch from measured_at)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RecentMeasurementStore recentStore;
+
+    @Autowired
+    public DownsamplingService(JdbcTemplate jdbcTemplate, RecentMeasurementStore recentStore) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.recentStore = recentStore;
+    }
+
+    /**
+     * Count, average, minimum and maximum of {@code parameter} per bucket, for buckets that
+     * have at least one value.
+     */
+    public List<SeriesPointDTO> getBuckets(String name, LocalDate startDate, LocalDate endDate, Bucket bucket) {
+        AirQualityParameter parameter = parameter(name);
+        checkRange(startDate, endDate);
+        String column = parameter.getColumn();
+        long days = ChronoUnit.DAYS.between(startDate, endDate) + 1;
+        if (days * 86400 / bucket.seconds > MAX_BUCKETS) {
+            throw new IllegalArgumentException("Range too long for " + bucket.code + " buckets, at most "
+                    + MAX_BUCKETS + " buckets are returned");
+        }
+
+        // Count, sum, minimum and maximum per bucket start.
+        Map<Double, double[]> inMemory = new TreeMap<>();
+        if (recentStore.forEachValue(parameter, startDate, endDate, (t, v) -> {
+            double[] acc = inMemory.computeIfAbsent(Math.floor(t / bucket.seconds) * bucket.seconds,
+                    b -> new double[]{0, 0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY});
+            acc[0]++;
+            acc[1] += v;
+            acc[2] = Math.min(acc[2], v);
+            acc[3] = Math.max(acc[3], v);
+        })) {
+            List<SeriesPointDTO> result = new ArrayList<>(inMemory.size());
+            inMemory.forEach((start, acc) -> result.add(SeriesPointDTO.bucket(toDateTime(start),
+                    (long) acc[0], acc[1] / acc[0], acc[2], acc[3])));
+            return result;
+        }
+
+        if (bucket == Bucket.ONE_DAY && parameter.isSummarised()) {
+            return jdbcTemplate.query("SELECT date, sample_count, value_sum / sample_count AS avg_value, " +
+                            "min_value, max_value FROM daily_stats " +
+                            "WHERE parameter = ? AND date BETWEEN ? AND ? ORDER BY date",
+                    (rs, rowNum) -> SeriesPointDTO.bucket(rs.getObject("date", LocalDate.class).atStartOfDay(),
+                            rs.getLong("sample_count"), rs.getDouble("avg_value"),
+                            rs.getDouble("min_value"), rs.getDouble("max_value")),
+                    column, startDate, endDate);
+        }
+
+        String sql = "SELECT floor(" + EPOCH + " / ?) * ? AS bucket_start, COUNT(" + column + ") AS samples, " +
+                "AVG(" + column + ") AS avg_value, MIN(" + column + ") AS min_value, MAX(" + column + ") AS max_value " +
+                "FROM air_quality_data " +
+                "WHERE date BETWEEN ? AND ? AND " + column + " IS NOT NULL " +
+                "GROUP BY 1 ORDER BY 1";
+        return jdbcTemplate.query(sql,
+                (rs, rowNum) -> SeriesPointDTO.bucket(toDateTime(rs.getDouble("bucket_start")),
+                        rs.getLong("samples"), rs.getDouble("avg_value"),
+                        rs.getDouble("min_value"), rs.getDouble("max_value")),
+                bucket.seconds, bucket.seconds, startDate, endDate);
+    }
+
+    /**
+     * At most {@code points} points of {@code parameter} chosen to keep the visual shape of
+     * the series, including its peaks.
+     */
+    public List<SeriesPointDTO> getPointBudget(String name, LocalDate startDate, LocalDate endDate, int points) {
+        AirQualityParameter parameter = parameter(name);
+        checkRange(startDate, endDate);
+        String column = parameter.getColumn();
+        long maxInput = (long) points * PRE_AGGREGATION_FACTOR;
+        List<double[]> series = seriesInMemory(parameter, startDate, endDate, maxInput);
+        if (series == null) {
+            series = seriesFromDatabase(column, startDate, endDate, maxInput);
+        }
+
+        List<SeriesPointDTO> result = new ArrayList<>();
+        for (double[] point : largestTriangleThreeBuckets(series, points)) {
+            result.add(SeriesPointDTO.point(toDateTime(point[0]), point[1]));
+        }
+        return result;
+    }
+
+    // The LTTB input from the database: the raw points, or the lowest and highest point of
+    // each slice if there are more than maxInput of them.
+    private List<double[]> seriesFromDatabase(String column, LocalDate startDate, LocalDate endDate, long maxInput) {
+        String where = " FROM air_quality_data WHERE date BETWEEN ? AND ? AND " + column + " IS NOT NULL";
+
+        Double[] extent = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*), MIN(" + EPOCH + "), MAX(" + EPOCH + ")" + where,
+                (rs, rowNum) -> new Double[]{rs.getDouble(1), rs.getDouble(2), rs.getDouble(3)},
+                startDate, endDate);
+        long rows = extent[0].longValue();
+        if (rows == 0) {
+            return new ArrayList<>();
+        }
+
+        if (rows <= maxInput) {
+            return jdbcTemplate.query("SELECT " + EPOCH + " AS t, " + column + " AS v" + where +
+                            " ORDER BY date, time",
+                    (rs, rowNum) -> new double[]{rs.getDouble("t"), rs.getDouble("v")},
+                    startDate, endDate);
+        } else {
+            // Arrays compare element by element, so MIN(ARRAY[value, time]) is the lowest value
+            // with the earliest time it occurs at, found in a single aggregation pass; negating
+            // the time does the same for the highest value.
+            double slice = sliceSeconds(extent[1], extent[2], maxInput);
+            String epoch = EPOCH + "::float8";
+            List<double[]> series = new ArrayList<>();
+            jdbcTemplate.query("SELECT floor(" + EPOCH + " / ?) AS slice, " +
+                            "MIN(ARRAY[" + column + ", " + epoch + "]) AS low, " +
+                            "MAX(ARRAY[" + column + ", -" + epoch + "]) AS high" + where +
+                            " GROUP BY slice ORDER BY slice",
+                    rs -> {
+                        Double[] low = (Double[]) rs.getArray("low").getArray();
+                        Double[] high = (Double[]) rs.getArray("high").getArray();
+                        addSlice(series, low[1], low[0], -high[1], high[0]);
+                    },
+                    slice, startDate, endDate);
+            return series;
+        }
+    }
+
+    // Same as seriesFromDatabase, from the in-memory store, or null if it does not hold the
+    // range.
+    private List<double[]> seriesInMemory(AirQualityParameter parameter, LocalDate startDate, LocalDate endDate, long maxInput) {
+        double[] extent = {0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        if (!recentStore.forEachValue(parameter, startDate, endDate, (t, v) -> {
+            extent[0]++;
+            extent[1] = Math.min(extent[1], t);
+            extent[2] = Math.max(extent[2], t);
+        })) {
+            return null;
+        }
+        if (extent[0] == 0) {
+            return new ArrayList<>();
+        }
+
+        if (extent[0] <= maxInput) {
+            List<double[]> series = new ArrayList<>((int) extent[0]);
+            return recentStore.forEachValue(parameter, startDate, endDate,
+                    (t, v) -> series.add(new double[]{t, v})) ? series : null;
+        }
+        double slice = sliceSeconds(extent[1], extent[2], maxInput);
+        // Time and value of the lowest, then the highest point per slice; the earliest wins ties.
+        Map<Double, double[]> slices = new TreeMap<>();
+        if (!recentStore.forEachValue(parameter, startDate, endDate, (t, v) -> {
+            double[] acc = slices.computeIfAbsent(Math.floor(t / slice),
+                    s -> new double[]{t, v, t, v});
+            if (v < acc[1] || (v == acc[1] && t < acc[0])) {
+                acc[0] = t;
+                acc[1] = v;
+            }
+            if (v > acc[3] || (v == acc[3] && t < acc[2])) {
+                acc[2] = t;
+                acc[3] = v;
+            }
+        })) {
+            return null;
+        }
+        List<double[]> series = new ArrayList<>(slices.size() * 2);
+        for (double[] acc : slices.values()) {
+            addSlice(series, acc[0], acc[1], acc[2], acc[3]);
+        }
+        return series;
+    }
+
+    // Slices wide enough that their two points each stay within maxInput overall.
+    private static double sliceSeconds(double first, double last, long maxInput) {
+        return Math.max(1, Math.ceil((last - first + 1) / Math.max(1, maxInput / 2)));
+    }
+
+    // Appends the lowest and highest point of a slice in time order, once if they coincide.
+    private static void addSlice(List<double[]> series, double lowTime, double low, double highTime, double high) {
+        if (lowTime == highTime) {
+            series.add(new double[]{lowTime, low});
+        } else if (lowTime < highTime) {
+            series.add(new double[]{lowTime, low});
+            series.add(new double[]{highTime, high});
+        } else {
+            series.add(new double[]{highTime, high});
+            series.add(new double[]{lowTime, low});
+        }
+    }
+
+    /**
+     * Keeps the first and last point, and from each of the {@code threshold - 2} buckets in
+     * between the point forming the largest triangle with the point kept before it and the
+     * average of the next bucket.
+     */
+    static List<double[]> largestTriangleThreeBuckets(List<double[]> data, int threshold) {
+        int size = data.size();
+        if (threshold >= size || threshold < 3) {
+            return data;
+        }
+
+        List<double[]> sampled = new ArrayList<>(threshold);
+        double every = (double) (size - 2) / (threshold - 2);
+        int a = 0;
+        sampled.add(data.get(a));
+
+        for (int i = 0; i < threshold - 2; i++) {
+            int nextStart = (int) Math.floor((i + 1) * every) + 1;
+            int nextEnd = Math.min((int) Math.floor((i + 2) * every) + 1, size);
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = nextStart; j < nextEnd; j++) {
+                avgX += data.get(j)[0];
+                avgY += data.get(j)[1];
+            }
+            int nextLength = nextEnd - nextStart;
+            avgX /= nextLength;
+            avgY /= nextLength;
+
+            int rangeStart = (int) Math.floor(i * every) + 1;
+            int rangeEnd = (int) Math.floor((i + 1) * every) + 1;
+            double[] pointA = data.get(a);
+            double maxArea = -1;
+            int maxIndex = rangeStart;
+            for (int j = rangeStart; j < rangeEnd; j++) {
+                double[] candidate = data.get(j);
+                double area = Math.abs((pointA[0] - avgX) * (candidate[1] - pointA[1])
+                        - (pointA[0] - candidate[0]) * (avgY - pointA[1]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    maxIndex = j;
+                }
+            }
+            sampled.add(data.get(maxIndex));
+            a = maxIndex;
+        }
+
+        sampled.add(data.get(size - 1));
+        return sampled;
+    }
+
+    private static void checkRange(LocalDate startDate, LocalDate endDate) {
+        if (endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException("endDate must not be before startDate");
+        }
+    }
+
+    private static AirQualityParameter parameter(String name) {
+        AirQualityParameter parameter = AirQualityParameter.fromColumn(name);
+        if (parameter == null) {
+            throw new IllegalArgumentException("Unknown parameter: " + name);
+        }
+        return parameter;
+    }
+
+    private static LocalDateTime toDateTime(double epochSeconds) {
+        long millis = Math.round(epochSeconds * 1000);
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000), (int) Math.floorMod(millis, 1000) * 1_000_000,
+                ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,265 @@
+package com.air.quality.prediction.service;
+
+import com.air.quality.prediction.dto.SeriesPointDTO;
+import com.air.quality.prediction.model.AirQualityData;
+import com.air.quality.prediction.model.AirQualityParameter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Maintains {@code hourly_stats}, the count and sum of each summarised parameter per hour,
+ * and computes rolling means over whole hours from it, such as the 8-hour CO and 24-hour
+ * PM averages air quality indices are defined on.
+ * <p>
+ * Like {@link DailyStatsRollup}, each chunk is folded in by the transaction that inserts
+ * it, so rows arriving out of order, or from a late file, only touch the hours they fall
+ * in. Every rolling mean covering those hours reflects them on the next read; nothing
+ * else is recomputed.
+ */
+@Service
+public class HourlyStatsRollup {
+
+    private static final Logger logger = LoggerFactory.getLogger(HourlyStatsRollup.class);
+
+    /**
+     * The rolling windows served.
+     */
+    public enum Window {
+        ONE_HOUR("1h", 1),
+        EIGHT_HOURS("8h", 8),
+        TWENTY_FOUR_HOURS("24h", 24);
+
+        private final String code;
+        private final int hours;
+
+        Window(String code, int hours) {
+            this.code = code;
+            this.hours = hours;
+        }
+
+        public static Window fromCode(String code) {
+            for (Window window : values()) {
+                if (window.code.equalsIgnoreCase(code)) {
+                    return window;
+                }
+            }
+            throw new IllegalArgumentException("Unknown window: " + code + ", expected 1h, 8h or 24h");
+        }
+
+        public int getHours() {
+            return hours;
+        }
+    }
+
+    private static final List<AirQualityParameter> PARAMETERS = AirQualityParameter.SUMMARISED;
+
+    // Concurrent chunks upsert in (parameter, hour) order, the primary key order, so they
+    // wait on each other rather than deadlock.
+    private static final String UPSERT_SQL = "INSERT INTO hourly_stats (hour, parameter, sample_count, value_sum) " +
+            "VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (parameter, hour) DO UPDATE SET " +
+            "sample_count = hourly_stats.sample_count + EXCLUDED.sample_count, " +
+            "value_sum = hourly_stats.value_sum + EXCLUDED.value_sum";
+
+    private static final String AGGREGATE_SQL = "INSERT INTO hourly_stats (hour, parameter, sample_count, value_sum) " +
+            "SELECT date_trunc('hour', a.measured_at), v.parameter, COUNT(*), SUM(v.value) " +
+            "FROM air_quality_data a CROSS JOIN LATERAL (VALUES " +
+            PARAMETERS.stream()
+                    .map(parameter -> "('" + parameter.getColumn() + "', a." + parameter.getColumn() + ")")
+                    .collect(Collectors.joining(", ")) +
+            ") AS v(parameter, value) " +
+            "WHERE v.value IS NOT NULL";
+
+    // Naming every parameter lets the delete seek the (parameter, hour) key per parameter
+    // rather than scan the table for the hour range.
+    private static final String DELETE_RANGE_SQL = "DELETE FROM hourly_stats WHERE parameter IN (" +
+            PARAMETERS.stream().map(parameter -> "'" + parameter.getColumn() + "'")
+                    .collect(Collectors.joining(", ")) +
+            ") AND hour >= ? AND hour < ?";
+
+    private record HourRow(LocalDateTime hour, long count, double sum) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public HourlyStatsRollup(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Folds a chunk into the rollup. Must run in the transaction that inserts the chunk.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void add(List<AirQualityData> chunk) {
+        // Count and sum per column, then hour, so rows are upserted in primary key order.
+        Map<String, Map<LocalDateTime, double[]>> hours = new TreeMap<>();
+        for (AirQualityData data : chunk) {
+            LocalDateTime hour = data.getDate().atTime(data.getTime().getHour(), 0);
+            for (AirQualityParameter parameter : PARAMETERS) {
+                Double value = parameter.get(data);
+                if (value != null) {
+                    double[] acc = hours.computeIfAbsent(parameter.getColumn(), p -> new TreeMap<>())
+                            .computeIfAbsent(hour, h -> new double[2]);
+                    acc[0]++;
+                    acc[1] += value;
+                }
+            }
+        }
+
+        List<Object[]> rows = new ArrayList<>();
+        hours.forEach((column, byHour) -> byHour.forEach((hour, acc) ->
+                rows.add(new Object[]{Timestamp.valueOf(hour), column, (long) acc[0], acc[1]})));
+        jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+    }
+
+    /**
+     * Recomputes the hours of the given days from the raw rows, e.g. after some of their
+     * rows were deleted.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recompute(Collection<LocalDate> dates) {
+        if (dates.isEmpty()) {
+            return;
+        }
+        // One hour range per run of consecutive days.
+        List<Object[]> ranges = new ArrayList<>();
+        LocalDate runStart = null;
+        LocalDate runEnd = null;
+        for (LocalDate date : new TreeSet<>(dates)) {
+            if (runEnd != null && !date.equals(runEnd)) {
+                ranges.add(new Object[]{runStart.atStartOfDay(), runEnd.atStartOfDay()});
+                runStart = null;
+            }
+            if (runStart == null) {
+                runStart = date;
+            }
+            runEnd = date.plusDays(1);
+        }
+        ranges.add(new Object[]{runStart.atStartOfDay(), runEnd.atStartOfDay()});
+        jdbcTemplate.batchUpdate(DELETE_RANGE_SQL, ranges);
+
+        Date[] days = dates.stream().map(Date::valueOf).toArray(Date[]::new);
+        jdbcTemplate.update(connection -> {
+            var ps = connection.prepareStatement(AGGREGATE_SQL + " AND a.date = ANY (?) GROUP BY 1, v.parameter");
+            ps.setArray(1, connection.createArrayOf("date", days));
+            return ps;
+        });
+    }
+
+    /**
+     * Removes the days from {@code from} to {@code to}, whose raw rows were archived.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void removeRange(LocalDate from, LocalDate to) {
+        jdbcTemplate.update(DELETE_RANGE_SQL, from.atStartOfDay(), to.plusDays(1).atStartOfDay());
+    }
+
+    /**
+     * Recomputes the whole table from the raw rows. Chunks committing meanwhile wait for
+     * the rebuild and are folded in on top of it.
+     *
+     * @return the number of (hour, parameter) rows written
+     */
+    @Transactional
+    public int rebuild() {
+        long start = System.currentTimeMillis();
+        jdbcTemplate.execute("LOCK TABLE hourly_stats IN EXCLUSIVE MODE");
+        jdbcTemplate.update("DELETE FROM hourly_stats");
+        int rows = jdbcTemplate.update(AGGREGATE_SQL + " GROUP BY 1, v.parameter");
+        logger.info("Rebuilt hourly_stats: {} rows in {} ms", rows, System.currentTimeMillis() - start);
+        return rows;
+    }
+
+    /**
+     * The rolling mean of {@code parameter} over {@code window} at every hour from
+     * {@code startDate} to {@code endDate}. The point of hour {@code h} is the mean of all
+     * values from {@code h - window + 1h} up to the end of {@code h}, with the number of
+     * values as its count. Hours whose window holds no value are left out.
+     */
+    public List<SeriesPointDTO> getRollingMeans(AirQualityParameter parameter, LocalDate startDate,
+                                                LocalDate endDate, Window window) {
+        LocalDateTime first = startDate.atStartOfDay();
+        LocalDateTime end = endDate.plusDays(1).atStartOfDay();
+        LocalDateTime readFrom = first.minusHours(window.hours - 1);
+
+        // The hours with data, in order; the window slides over the hours in between.
+        List<HourRow> rows = jdbcTemplate.query("SELECT hour, sample_count, value_sum FROM hourly_stats " +
+                        "WHERE parameter = ? AND hour >= ? AND hour < ? ORDER BY hour",
+                (rs, rowNum) -> new HourRow(rs.getTimestamp("hour").toLocalDateTime(),
+                        rs.getLong("sample_count"), rs.getDouble("value_sum")),
+                parameter.getColumn(), Timestamp.valueOf(readFrom), Timestamp.valueOf(end));
+
+        RollingWindow rolling = new RollingWindow(window.hours);
+        List<SeriesPointDTO> points = new ArrayList<>();
+        int next = 0;
+        for (LocalDateTime hour = readFrom; hour.isBefore(end); hour = hour.plusHours(1)) {
+            if (next < rows.size() && rows.get(next).hour().equals(hour)) {
+                rolling.push(rows.get(next).count(), rows.get(next).sum());
+                next++;
+            } else {
+                rolling.push(0, 0);
+            }
+            if (!hour.isBefore(first) && rolling.count() > 0) {
+                SeriesPointDTO point = SeriesPointDTO.point(hour, rolling.mean());
+                point.setCount(rolling.count());
+                points.add(point);
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Count and sum of the last {@code size} hours, kept in a ring buffer so each hour
+     * pushed in, and the one dropped out, costs O(1).
+     */
+    static final class RollingWindow {
+        private final long[] counts;
+        private final double[] sums;
+        private int next;
+        private long count;
+        private double sum;
+
+        RollingWindow(int size) {
+            counts = new long[size];
+            sums = new double[size];
+        }
+
+        void push(long hourCount, double hourSum) {
+            count += hourCount - counts[next];
+            sum += hourSum - sums[next];
+            counts[next] = hourCount;
+            sums[next] = hourSum;
+            next = (next + 1) % counts.length;
+            if (count == 0) {
+                // Drop the rounding left over once the window is empty.
+                sum = 0;
+            }
+        }
+
+        long count() {
+            return count;
+        }
+
+        double mean() {
+            return sum / count;
+        }
+    }
+}
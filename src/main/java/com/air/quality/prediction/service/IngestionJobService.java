@@ -0,0 +1,129 @@
+package com.air.quality.prediction.service;
+
+import com.air.quality.prediction.dto.IngestionJobDTO;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs manually triggered file ingestions in the background and keeps their progress
+ * around for polling.
+ * <p>
+ * Jobs run on a fixed number of threads with a bounded queue; once both are full new
+ * submissions are rejected rather than piling up. Finished jobs are forgotten after
+ * {@code csv.jobs.retention-ms}.
+ */
+@Service
+public class IngestionJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionJobService.class);
+
+    private record Job(String id, File file, LocalDateTime submittedAt, IngestionProgress progress) {
+    }
+
+    @Value("${csv.jobs.retention-ms:3600000}")
+    private long retentionMillis;
+
+    private final AirQualityService airQualityService;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    @Autowired
+    public IngestionJobService(AirQualityService airQualityService,
+                               @Value("${csv.jobs.threads:2}") int threads,
+                               @Value("${csv.jobs.queue-capacity:16}") int queueCapacity) {
+        this.airQualityService = airQualityService;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "csv-job-" + threadCount.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues an ingestion of {@code file}. If the same file already has a job that has not
+     * finished, that job is returned instead of starting another one.
+     *
+     * @throws RejectedExecutionException if the job queue is full
+     */
+    public synchronized IngestionJobDTO submit(File file) {
+        for (Job job : jobs.values()) {
+            if (job.file().equals(file) && !job.progress().getState().isFinished()) {
+                return toDto(job);
+            }
+        }
+
+        Job job = new Job(UUID.randomUUID().toString(), file, LocalDateTime.now(),
+                new IngestionProgress(file.length()));
+        executor.execute(() -> run(job));
+        jobs.put(job.id(), job);
+        logger.info("Queued ingestion job {} for {}", job.id(), file);
+        return toDto(job);
+    }
+
+    public Optional<IngestionJobDTO> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id)).map(IngestionJobService::toDto);
+    }
+
+    @Scheduled(fixedDelay = 60000)
+    public void purgeFinishedJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(retentionMillis, ChronoUnit.MILLIS);
+        jobs.values().removeIf(job -> job.progress().getState().isFinished()
+                && job.progress().getFinishedAt().isBefore(cutoff));
+    }
+
+    private void run(Job job) {
+        try {
+            airQualityService.processCsvFile(job.file(), job.progress());
+        } catch (RuntimeException e) {
+            logger.error("Ingestion job {} for {} failed", job.id(), job.file(), e);
+            job.progress().failed(e.getMessage());
+        }
+    }
+
+    private static IngestionJobDTO toDto(Job job) {
+        IngestionProgress progress = job.progress();
+        IngestionJobDTO dto = new IngestionJobDTO();
+        dto.setId(job.id());
+        dto.setFilename(job.file().getName());
+        dto.setState(progress.getState().name());
+        dto.setMessage(progress.getMessage());
+        dto.setRowsParsed(progress.getRowsParsed());
+        dto.setRowsSaved(progress.getRowsSaved());
+        dto.setRowsRejected(progress.getRowsRejected());
+        dto.setBytesRead(progress.getBytesRead());
+        dto.setTotalBytes(progress.getTotalBytes());
+        dto.setRowsPerSecond(progress.getRowsPerSecond());
+        dto.setEtaSeconds(progress.getEtaSeconds());
+        dto.setSubmittedAt(job.submittedAt());
+        dto.setStartedAt(progress.getStartedAt());
+        dto.setFinishedAt(progress.getFinishedAt());
+        return dto;
+    }
+}
@@ -0,0 +1,216 @@
+package com.air.quality.prediction.service;
+
+import com.air.quality.prediction.model.IngestedFile;
+import com.air.quality.prediction.repository.AirQualityRepository;
+import com.air.quality.prediction.repository.IngestedFileRepository;
+import com.air.quality.prediction.store.RecentMeasurementStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Decides whether a CSV file needs ingesting and tracks its progress in
+ * {@code ingested_file}.
+ * <p>
+ * A completed file with the same size and mtime is skipped without reading it. If the
+ * size or mtime changed, the content hash decides whether it was only touched or really
+ * rewritten; a rewritten file has its old rows removed and is ingested again. A file that
+ * was interrupted resumes after its last committed chunk as long as it has not changed
+ * since.
+ */
+@Service
+public class IngestionLedgerService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionLedgerService.class);
+
+    public enum Action {
+        SKIP, START, RESUME
+    }
+
+    public record Plan(Action action, IngestedFile entry) {
+    }
+
+    private final IngestedFileRepository ingestedFileRepository;
+    private final AirQualityRepository airQualityRepository;
+    private final DailyStatsRollup dailyStatsRollup;
+    private final DailyQuantileRollup dailyQuantileRollup;
+    private final HourlyStatsRollup hourlyStatsRollup;
+    private final DailyAqiRollup dailyAqiRollup;
+    private final RecentMeasurementStore recentStore;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public IngestionLedgerService(IngestedFileRepository ingestedFileRepository,
+                                  AirQualityRepository airQualityRepository,
+                                  DailyStatsRollup dailyStatsRollup,
+                                  DailyQuantileRollup dailyQuantileRollup,
+                                  HourlyStatsRollup hourlyStatsRollup,
+                                  DailyAqiRollup dailyAqiRollup,
+                                  RecentMeasurementStore recentStore,
+                                  TransactionTemplate transactionTemplate) {
+        this.ingestedFileRepository = ingestedFileRepository;
+        this.airQualityRepository = airQualityRepository;
+        this.dailyStatsRollup = dailyStatsRollup;
+        this.dailyQuantileRollup = dailyQuantileRollup;
+        this.hourlyStatsRollup = hourlyStatsRollup;
+        this.dailyAqiRollup = dailyAqiRollup;
+        this.recentStore = recentStore;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Decides what to do with {@code file} and records the decision. The content hash a
+     * changed file needs is computed before the ledger transaction starts, so hashing a
+     * large file holds neither a connection nor the ledger row.
+     */
+    public Plan plan(File file) throws IOException {
+        long size = file.length();
+        long lastModified = file.lastModified();
+        boolean changed = ingestedFileRepository.findByFilename(file.getName())
+                .filter(entry -> entry.getStatus() == IngestedFile.Status.COMPLETED
+                        && !entry.matches(size, lastModified))
+                .isPresent();
+        String hash = changed ? sha256(file) : null;
+        try {
+            return transactionTemplate.execute(status -> plan(file, size, lastModified, hash));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Plan plan(File file, long size, long lastModified, String precomputedHash) {
+        String filename = file.getName();
+        Optional<IngestedFile> existing = ingestedFileRepository.findByFilename(filename);
+        if (existing.isEmpty()) {
+            IngestedFile entry = new IngestedFile();
+            entry.setFilename(filename);
+            start(entry, size, lastModified);
+            return new Plan(Action.START, ingestedFileRepository.save(entry));
+        }
+
+        IngestedFile entry = existing.get();
+        if (entry.getStatus() == IngestedFile.Status.COMPLETED) {
+            if (entry.matches(size, lastModified)) {
+                return new Plan(Action.SKIP, entry);
+            }
+            // Only computed here if the entry changed since the lookup above.
+            String hash = precomputedHash != null ? precomputedHash : sha256Unchecked(file);
+            if (entry.getContentHash() == null || entry.getContentHash().equals(hash)) {
+                // Touched, copied again, or ingested before the ledger existed.
+                entry.setSizeBytes(size);
+                entry.setLastModified(lastModified);
+                entry.setContentHash(hash);
+                return new Plan(Action.SKIP, entry);
+            }
+            logger.info("File {} was rewritten since it was ingested, replacing its rows", filename);
+        } else if (entry.matches(size, lastModified) && entry.getLastCommittedOffset() > 0) {
+            logger.info("Resuming file {} after record {}", filename, entry.getLastCommittedOffset());
+            entry.setStatus(IngestedFile.Status.IN_PROGRESS);
+            return new Plan(Action.RESUME, entry);
+        }
+
+        List<LocalDate> affectedDates = airQualityRepository.findDistinctDatesBySourceFile(filename);
+        long deleted = airQualityRepository.deleteBySourceFile(filename);
+        if (deleted > 0) {
+            logger.info("Removed {} rows previously ingested from {}", deleted, filename);
+            AfterCommit.run(() -> recentStore.removeSourceFile(filename));
+            dailyStatsRollup.recompute(affectedDates);
+            dailyQuantileRollup.recompute(affectedDates);
+            hourlyStatsRollup.recompute(affectedDates);
+            dailyAqiRollup.recompute(affectedDates);
+        }
+        start(entry, size, lastModified);
+        return new Plan(Action.START, entry);
+    }
+
+    /**
+     * Records the progress of a committed chunk. Must run in the chunk's transaction so the
+     * offset never points past rows that were not written.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordChunk(IngestedFile entry, long offset, long rowsSaved, long rowsRejected) {
+        ingestedFileRepository.updateProgress(entry.getId(), offset, rowsSaved, rowsRejected);
+    }
+
+    @Transactional
+    public void complete(IngestedFile entry, String contentHash, long rowsRead, long rowsSaved, long rowsRejected) {
+        entry.setContentHash(contentHash);
+        entry.setRowsRead(rowsRead);
+        entry.setLastCommittedOffset(rowsRead);
+        entry.setRowsSaved(rowsSaved);
+        entry.setRowsRejected(rowsRejected);
+        entry.setStatus(IngestedFile.Status.COMPLETED);
+        entry.setCompletedAt(LocalDateTime.now());
+        ingestedFileRepository.save(entry);
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void fail(IngestedFile entry) {
+        ingestedFileRepository.findById(entry.getId()).ifPresent(current -> {
+            current.setStatus(IngestedFile.Status.FAILED);
+            ingestedFileRepository.save(current);
+        });
+    }
+
+    private static void start(IngestedFile entry, long size, long lastModified) {
+        entry.setSizeBytes(size);
+        entry.setLastModified(lastModified);
+        entry.setContentHash(null);
+        entry.setRowsRead(0);
+        entry.setRowsSaved(0);
+        entry.setRowsRejected(0);
+        entry.setLastCommittedOffset(0);
+        entry.setStatus(IngestedFile.Status.IN_PROGRESS);
+        entry.setStartedAt(LocalDateTime.now());
+        entry.setCompletedAt(null);
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public static String toHex(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String sha256Unchecked(File file) {
+        try {
+            return sha256(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String sha256(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest);
+    }
+}
@@ -0,0 +1,88 @@
+package com.air.quality.prediction.service;
+
+import com.air.quality.prediction.parser.AirQualityRowMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters for CSV ingestion, exposed through Actuator under
+ * {@code /actuator/metrics} and {@code /actuator/prometheus}.
+ * <ul>
+ *     <li>{@code airquality.ingest.files} - files finished, tagged by outcome</li>
+ *     <li>{@code airquality.ingest.rows.parsed} - rows read from files, updated per chunk</li>
+ *     <li>{@code airquality.ingest.rows.rejected} - rejected rows, tagged by reason</li>
+ *     <li>{@code airquality.ingest.values.invalid} - numeric values stored as null</li>
+ *     <li>{@code airquality.ingest.file.elapsed} - end-to-end time of a completed file, from
+ *     leaving the queue to its last commit: ledger check, hashing, parsing and writes</li>
+ *     <li>{@code airquality.ingest.batch.duration} - time to commit one chunk, as a histogram</li>
+ * </ul>
+ */
+@Service
+public class IngestionMetrics {
+
+    private final MeterRegistry registry;
+    private final Counter rowsParsed;
+    private final Counter invalidValues;
+    private final Map<AirQualityRowMapper.RejectReason, Counter> rowsRejected =
+            new EnumMap<>(AirQualityRowMapper.RejectReason.class);
+    private final Timer fileElapsed;
+    private final Timer batchDuration;
+
+    @Autowired
+    public IngestionMetrics(MeterRegistry registry, AirQualityBulkLoader bulkLoader) {
+        this.registry = registry;
+        this.rowsParsed = Counter.builder("airquality.ingest.rows.parsed")
+                .description("CSV rows read during ingestion")
+                .register(registry);
+        this.invalidValues = Counter.builder("airquality.ingest.values.invalid")
+                .description("Numeric CSV values that could not be parsed and were stored as null")
+                .register(registry);
+        for (AirQualityRowMapper.RejectReason reason : AirQualityRowMapper.RejectReason.values()) {
+            rowsRejected.put(reason, Counter.builder("airquality.ingest.rows.rejected")
+                    .description("CSV rows rejected during ingestion")
+                    .tag("reason", reason.name().toLowerCase(Locale.ROOT))
+                    .register(registry));
+        }
+        this.fileElapsed = Timer.builder("airquality.ingest.file.elapsed")
+                .description("End-to-end time to ingest a CSV file, excluding time queued")
+                .register(registry);
+        this.batchDuration = Timer.builder("airquality.ingest.batch.duration")
+                .description("Time to commit one chunk of rows")
+                .tag("mode", bulkLoader.getWriteMode().name().toLowerCase(Locale.ROOT))
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public void rowsParsed(long rows) {
+        rowsParsed.increment(rows);
+    }
+
+    /**
+     * Adds the rejections and invalid values counted by a mapper once it is done with its
+     * part of a file.
+     */
+    public void rowsMapped(AirQualityRowMapper rowMapper) {
+        rowsRejected.forEach((reason, counter) -> counter.increment(rowMapper.getRejectedCount(reason)));
+        invalidValues.increment(rowMapper.getNumberParser().getInvalidCount());
+    }
+
+    public void fileFinished(IngestionProgress progress) {
+        registry.counter("airquality.ingest.files",
+                "outcome", progress.getState().name().toLowerCase(Locale.ROOT)).increment();
+        if (progress.getState() == IngestionProgress.State.COMPLETED) {
+            fileElapsed.record(progress.getElapsedNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void timeBatch(Runnable write) {
+        batchDuration.record(write);
+    }
+}
@@ -0,0 +1,173 @@
+package com.air.quality.prediction.service;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live counters of one file ingestion, updated by the parser and writer threads and read
+ * by whoever polls the job.
+ * <p>
+ * Rows count as parsed once their chunk is handed to the writers and as saved once it has
+ * committed. Progress through the file is measured in bytes, which is what the ETA is
+ * based on since the number of rows is not known up front.
+ */
+public class IngestionProgress {
+
+    public enum State {
+        QUEUED, RUNNING, COMPLETED, SKIPPED, FAILED;
+
+        public boolean isFinished() {
+            return this == COMPLETED || this == SKIPPED || this == FAILED;
+        }
+    }
+
+    private final long totalBytes;
+    private final AtomicLong rowsParsed = new AtomicLong();
+    private final AtomicLong rowsSaved = new AtomicLong();
+    private final AtomicLong rowsRejected = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    private volatile State state = State.QUEUED;
+    private volatile String message;
+    private volatile long resumedRows;
+    private volatile long resumedBytes;
+    private volatile long startNanos;
+    private volatile long finishNanos;
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+
+    public IngestionProgress(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    public void started() {
+        startNanos = System.nanoTime();
+        startedAt = LocalDateTime.now();
+        state = State.RUNNING;
+    }
+
+    /**
+     * Seeds the counters with what an interrupted run already committed. Resumed rows do
+     * not count towards throughput.
+     */
+    public void resumed(long rowsRead, long saved, long rejected) {
+        resumedRows = rowsRead;
+        rowsParsed.addAndGet(rowsRead);
+        rowsSaved.addAndGet(saved);
+        rowsRejected.addAndGet(rejected);
+    }
+
+    /**
+     * Marks the first {@code bytes} of the file as read past on resume. They count towards
+     * progress through the file but not towards the rate the ETA is based on.
+     */
+    public void resumedAt(long bytes) {
+        resumedBytes = bytes;
+        bytesRead.addAndGet(bytes);
+    }
+
+    public void parsed(long rows, long rejected, long bytes) {
+        rowsParsed.addAndGet(rows);
+        rowsRejected.addAndGet(rejected);
+        bytesRead.addAndGet(bytes);
+    }
+
+    public void saved(long rows) {
+        rowsSaved.addAndGet(rows);
+    }
+
+    public void completed() {
+        bytesRead.set(totalBytes);
+        finish(State.COMPLETED, null);
+    }
+
+    public void skipped(String reason) {
+        finish(State.SKIPPED, reason);
+    }
+
+    public void failed(String reason) {
+        finish(State.FAILED, reason);
+    }
+
+    private void finish(State finalState, String reason) {
+        message = reason;
+        finishNanos = System.nanoTime();
+        finishedAt = LocalDateTime.now();
+        state = finalState;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getRowsParsed() {
+        return rowsParsed.get();
+    }
+
+    public long getRowsSaved() {
+        return rowsSaved.get();
+    }
+
+    public long getRowsRejected() {
+        return rowsRejected.get();
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    /**
+     * Rows parsed per second in this run, or null before it has started.
+     */
+    public Long getRowsPerSecond() {
+        long elapsedNanos = getElapsedNanos();
+        if (elapsedNanos <= 0) {
+            return null;
+        }
+        return (rowsParsed.get() - resumedRows) * 1_000_000_000L / elapsedNanos;
+    }
+
+    /**
+     * Seconds until the rest of the file has been read at the current rate, or null if
+     * there is no rate to go by yet.
+     */
+    public Long getEtaSeconds() {
+        if (state.isFinished()) {
+            return state == State.COMPLETED ? 0L : null;
+        }
+        long read = bytesRead.get();
+        long readThisRun = read - resumedBytes;
+        long elapsedNanos = getElapsedNanos();
+        if (readThisRun <= 0 || elapsedNanos <= 0 || totalBytes <= 0) {
+            return null;
+        }
+        long remaining = Math.max(0, totalBytes - read);
+        return (long) ((double) elapsedNanos * remaining / readThisRun / 1_000_000_000L);
+    }
+
+    /**
+     * Time since the run started, up to when it finished.
+     */
+    public long getElapsedNanos() {
+        if (startNanos == 0) {
+            return 0;
+        }
+        return (state.isFinished() ? finishNanos : System.nanoTime()) - startNanos;
+    }
+}
@@ -0,0 +1,86 @@
+package com.air.quality.prediction.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Fixed set of writer threads that commit parsed chunks to the database.
+ * <p>
+ * Parsers hand chunks over through a bounded queue: when all writers are busy and the
+ * queue is full, {@link #submit} blocks, so parsing can never run ahead of the database
+ * by more than {@code csv.ingest.write-queue-capacity} chunks. The number of writers also
+ * caps how many connections ingestion takes from the pool.
+ */
+@Service
+public class IngestionWriterPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionWriterPool.class);
+
+    private record WriteTask(Runnable action, CompletableFuture<Void> result) {
+    }
+
+    @Value("${csv.ingest.writer-threads:2}")
+    private int writerThreads;
+
+    @Value("${csv.ingest.write-queue-capacity:4}")
+    private int queueCapacity;
+
+    private BlockingQueue<WriteTask> queue;
+    private final List<Thread> writers = new ArrayList<>();
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        for (int i = 0; i < writerThreads; i++) {
+            Thread writer = new Thread(this::run, "csv-writer-" + i);
+            writer.setDaemon(true);
+            writer.start();
+            writers.add(writer);
+        }
+        logger.info("Started {} ingestion writers (queue capacity {})", writerThreads, queueCapacity);
+    }
+
+    @PreDestroy
+    public void stop() {
+        writers.forEach(Thread::interrupt);
+    }
+
+    /**
+     * Queues a write, blocking while the queue is full.
+     *
+     * @return completes when the write has committed, or exceptionally if it failed
+     */
+    public CompletableFuture<Void> submit(Runnable write) throws InterruptedException {
+        WriteTask task = new WriteTask(write, new CompletableFuture<>());
+        queue.put(task);
+        return task.result();
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            WriteTask task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                task.action().run();
+                task.result().complete(null);
+            } catch (Throwable t) {
+                task.result().completeExceptionally(t);
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.air.quality.prediction.service;
+
+import com.air.quality.prediction.model.AirQualityData;
+import com.air.quality.prediction.parser.AirQualityRowMapper;
+import com.air.quality.prediction.parser.CsvByteRanges;
+import com.opencsv.CSVParser;
+import com.opencsv.CSVParserBuilder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Parses one large CSV file on several cores.
+ * <p>
+ * The file is split into newline-aligned byte ranges after the header line, and each
+ * range is memory-mapped and parsed on a dedicated ForkJoin pool with its own
+ * {@link AirQualityRowMapper}. Chunks go to {@link IngestionWriterPool} like in the
+ * sequential path, with one chunk per range in flight. Because ranges commit out of
+ * order, an interrupted file restarts from the beginning rather than resuming.
+ * <p>
+ * When a range fails, the others stop at their next line, and the file is only reported
+ * as failed once every range has stopped and its last chunk has been written or has
+ * failed. No write of the file is left running when the ledger marks it failed and a
+ * rerun deletes its rows.
+ */
+@Service
+public class MappedCsvIngestService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedCsvIngestService.class);
+
+    public record Result(long rowsRead, long rowsSaved, long rowsRejected,
+                         long invalidValues, String contentHash) {
+    }
+
+    private record RangeResult(long rowsRead, long rowsSaved, long rowsRejected, long invalidValues) {
+    }
+
+    @Value("${csv.ingest.parallel-threshold-bytes:268435456}")
+    private long thresholdBytes;
+
+    @Value("${csv.ingest.batch-size:500}")
+    private int batchSize;
+
+    private final ForkJoinPool pool;
+    private final AirQualityBulkLoader bulkLoader;
+    private final IngestionWriterPool writerPool;
+    private final TransactionTemplate transactionTemplate;
+    private final IngestionMetrics metrics;
+
+    @Autowired
+    public MappedCsvIngestService(AirQualityBulkLoader bulkLoader,
+                                  IngestionWriterPool writerPool,
+                                  TransactionTemplate transactionTemplate,
+                                  IngestionMetrics metrics,
+                                  @Value("${csv.ingest.parallel-parsers:0}") int parallelism) {
+        this.bulkLoader = bulkLoader;
+        this.writerPool = writerPool;
+        this.transactionTemplate = transactionTemplate;
+        this.metrics = metrics;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    public boolean accepts(File file) {
+        return thresholdBytes > 0 && file.length() >= thresholdBytes;
+    }
+
+    public Result ingest(File file, IngestionProgress progress) throws IOException, InterruptedException {
+        String filename = file.getName();
+        Charset charset = Charset.defaultCharset();
+        // Set by the first range that fails, so the others stop at their next line.
+        AtomicBoolean failed = new AtomicBoolean();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long dataStart = CsvByteRanges.skipLine(channel, 0);
+            List<CsvByteRanges.Range> ranges = CsvByteRanges.split(channel, dataStart, pool.getParallelism() * 4);
+            logger.info("Parsing {} in {} ranges on {} threads", filename, ranges.size(), pool.getParallelism());
+
+            ForkJoinTask<String> hashTask = pool.submit(() -> sha256(channel, failed));
+            List<ForkJoinTask<RangeResult>> tasks = new ArrayList<>(ranges.size());
+            for (CsvByteRanges.Range range : ranges) {
+                tasks.add(pool.submit(() -> parseRange(channel, range, filename, charset, progress, failed)));
+            }
+
+            try {
+                long rowsRead = 0;
+                long rowsSaved = 0;
+                long rowsRejected = 0;
+                long invalidValues = 0;
+                for (ForkJoinTask<RangeResult> task : tasks) {
+                    RangeResult result = task.get();
+                    rowsRead += result.rowsRead();
+                    rowsSaved += result.rowsSaved();
+                    rowsRejected += result.rowsRejected();
+                    invalidValues += result.invalidValues();
+                }
+                return new Result(rowsRead, rowsSaved, rowsRejected, invalidValues, hashTask.get());
+            } catch (InterruptedException e) {
+                failed.set(true);
+                awaitAll(tasks, hashTask);
+                throw e;
+            } catch (ExecutionException e) {
+                failed.set(true);
+                awaitAll(tasks, hashTask);
+                throw firstFailure(tasks, e);
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IllegalStateException("Parallel parsing of " + filename + " failed", e.getCause());
+        }
+    }
+
+    // Tasks are not cancelled: a running ForkJoinTask keeps running after cancel() while
+    // get() already returns, which is exactly what must not happen with writes in flight.
+    // The failed flag stops them instead, and this waits until they have.
+    private static void awaitAll(List<ForkJoinTask<RangeResult>> tasks, ForkJoinTask<String> hashTask) {
+        for (ForkJoinTask<RangeResult> task : tasks) {
+            task.quietlyJoin();
+        }
+        hashTask.quietlyJoin();
+    }
+
+    // The range that failed first may come after ranges that only stopped because of it.
+    private static ExecutionException firstFailure(List<ForkJoinTask<RangeResult>> tasks, ExecutionException e) {
+        for (ForkJoinTask<RangeResult> task : tasks) {
+            Throwable exception = task.getException();
+            if (exception != null && !(exception instanceof CancellationException)) {
+                return new ExecutionException(exception);
+            }
+        }
+        return e;
+    }
+
+    private RangeResult parseRange(FileChannel channel, CsvByteRanges.Range range, String filename,
+                                   Charset charset, IngestionProgress progress, AtomicBoolean failed)
+            throws IOException, InterruptedException {
+        RangeParser parser = new RangeParser(filename, progress, failed);
+        try {
+            CsvByteRanges.forEachLine(channel, range, charset, parser);
+            return parser.finish();
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            failed.set(true);
+            parser.awaitPendingWrite();
+            throw e;
+        }
+    }
+
+    /**
+     * Parses the lines of one range, keeping at most one chunk of it with the writers.
+     */
+    private final class RangeParser implements CsvByteRanges.LineHandler {
+
+        private final IngestionProgress progress;
+        private final AtomicBoolean failed;
+        private final CSVParser csvParser = new CSVParserBuilder().withSeparator(',').build();
+        private final AirQualityRowMapper rowMapper;
+        private List<AirQualityData> chunk = new ArrayList<>(batchSize);
+        private CompletableFuture<Void> pendingWrite = CompletableFuture.completedFuture(null);
+        private long rowsRead;
+        private long rowsSaved;
+        private long rowsRejected;
+        // Not yet passed on to the progress. Line lengths in chars stand in for bytes,
+        // which is exact for the ASCII files this is used for.
+        private long unreportedRows;
+        private long unreportedRejected;
+        private long unreportedBytes;
+
+        RangeParser(String filename, IngestionProgress progress, AtomicBoolean failed) {
+            this.progress = progress;
+            this.failed = failed;
+            this.rowMapper = new AirQualityRowMapper(filename);
+        }
+
+        @Override
+        public void accept(String line) throws InterruptedException {
+            if (failed.get()) {
+                throw new CancellationException("Another range of the file failed");
+            }
+            rowsRead++;
+            unreportedRows++;
+            unreportedBytes += line.length() + 1;
+            AirQualityData data;
+            try {
+                data = rowMapper.map(csvParser.parseLine(line));
+            } catch (IOException e) {
+                rowMapper.rejectMalformed(e.getMessage());
+                data = null;
+            }
+            if (data == null) {
+                rowsRejected++;
+                unreportedRejected++;
+                return;
+            }
+
+            chunk.add(data);
+            if (chunk.size() >= batchSize) {
+                report();
+                pendingWrite.join();
+                pendingWrite = write(chunk, progress);
+                rowsSaved += chunk.size();
+                chunk = new ArrayList<>(batchSize);
+            }
+        }
+
+        RangeResult finish() throws InterruptedException {
+            report();
+            metrics.rowsMapped(rowMapper);
+            pendingWrite.join();
+            if (!chunk.isEmpty()) {
+                pendingWrite = write(chunk, progress);
+                pendingWrite.join();
+                rowsSaved += chunk.size();
+            }
+            return new RangeResult(rowsRead, rowsSaved, rowsRejected, rowMapper.getNumberParser().getInvalidCount());
+        }
+
+        /**
+         * Waits for the chunk with the writers, if any, whether it succeeds or fails.
+         */
+        void awaitPendingWrite() {
+            pendingWrite.exceptionally(e -> null).join();
+        }
+
+        private void report() {
+            progress.parsed(unreportedRows, unreportedRejected, unreportedBytes);
+            metrics.rowsParsed(unreportedRows);
+            unreportedRows = 0;
+            unreportedRejected = 0;
+            unreportedBytes = 0;
+        }
+    }
+
+    private CompletableFuture<Void> write(List<AirQualityData> chunk, IngestionProgress progress)
+            throws InterruptedException {
+        return writerPool.submit(() -> {
+            metrics.timeBatch(() -> transactionTemplate.executeWithoutResult(status -> bulkLoader.write(chunk)));
+            progress.saved(chunk.size());
+        });
+    }
+
+    private static String sha256(FileChannel channel, AtomicBoolean failed) throws IOException {
+        MessageDigest digest = IngestionLedgerService.newDigest();
+        ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+        long position = 0;
+        int read;
+        while (!failed.get() && (read = channel.read(buffer, position)) > 0) {
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+            position += read;
+        }
+        return IngestionLedgerService.toHex(digest);
+    }
+}
@@ -0,0 +1,157 @@
+package com.air.quality.prediction.service;
+
+import com.air.quality.prediction.dto.MeasurementPageDTO;
+import com.air.quality.prediction.model.AirQualityParameter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Pages through raw measurements in (date, time, id) order and selects only the requested
+ * columns.
+ * <p>
+ * Pages are addressed by keyset rather than offset: the cursor holds the key of the last
+ * row returned and the next page starts right after it, so every page is an index range
+ * scan on {@code idx_air_quality_date_time_id} no matter how deep it is.
+ */
+@Service
+public class MeasurementQueryService {
+
+    public static final int DEFAULT_LIMIT = 1000;
+    public static final int MAX_LIMIT = 10000;
+
+    // Field names as they appear in AirQualityData JSON, mapped to their columns. Only these
+    // ever reach the SQL.
+    private static final Map<String, String> FIELDS = new LinkedHashMap<>();
+
+    static {
+        for (AirQualityParameter parameter : AirQualityParameter.all()) {
+            FIELDS.put(parameter.getColumn(), parameter.getColumn());
+        }
+        FIELDS.put("mrk", "mrk");
+        FIELDS.put("sourceFile", "source_file");
+        FIELDS.put("aqi", "aqi");
+        FIELDS.put("aqiPollutant", "aqi_pollutant");
+    }
+
+    private record Cursor(LocalDate date, LocalTime time, long id) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public MeasurementQueryService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Returns up to {@code limit} rows of {@code [startDate, endDate]} after {@code cursor}.
+     *
+     * @param fields JSON field names to include besides id, date and time; all of them if empty
+     * @param cursor {@code nextCursor} of the previous page, or null for the first page
+     * @throws IllegalArgumentException for unknown fields or a malformed cursor
+     */
+    public MeasurementPageDTO getPage(LocalDate startDate, LocalDate endDate, List<String> fields,
+                                      int limit, String cursor) {
+        List<String> selected = resolveFields(fields);
+        int pageSize = Math.max(1, Math.min(limit, MAX_LIMIT));
+
+        StringBuilder sql = new StringBuilder("SELECT id, date, time");
+        for (String field : selected) {
+            sql.append(", ").append(FIELDS.get(field));
+        }
+        sql.append(" FROM air_quality_data WHERE date BETWEEN ? AND ?");
+        List<Object> args = new ArrayList<>(List.of(startDate, endDate));
+        if (cursor != null && !cursor.isBlank()) {
+            Cursor after = decode(cursor);
+            sql.append(" AND (date, time, id) > (?, ?, ?)");
+            args.add(after.date());
+            args.add(after.time());
+            args.add(after.id());
+        }
+        // One extra row tells whether there is a next page.
+        sql.append(" ORDER BY date, time, id LIMIT ?");
+        args.add(pageSize + 1);
+
+        List<Map<String, Object>> items = jdbcTemplate.query(sql.toString(), (rs, rowNum) -> {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("id", rs.getLong("id"));
+            item.put("date", rs.getObject("date", LocalDate.class));
+            item.put("time", rs.getObject("time", LocalTime.class));
+            for (String field : selected) {
+                Object value = rs.getObject(FIELDS.get(field));
+                if (value != null) {
+                    item.put(field, value);
+                }
+            }
+            return item;
+        }, args.toArray());
+
+        String nextCursor = null;
+        if (items.size() > pageSize) {
+            items = items.subList(0, pageSize);
+            Map<String, Object> last = items.get(pageSize - 1);
+            nextCursor = encode(new Cursor((LocalDate) last.get("date"), (LocalTime) last.get("time"),
+                    (Long) last.get("id")));
+        }
+        return new MeasurementPageDTO(items, nextCursor);
+    }
+
+    /**
+     * The given JSON field names, or all of them if none are given.
+     *
+     * @throws IllegalArgumentException for unknown fields
+     */
+    public static List<String> resolveFields(List<String> fields) {
+        List<String> selected = fields == null || fields.isEmpty() ? new ArrayList<>(FIELDS.keySet()) : fields;
+        for (String field : selected) {
+            if (!FIELDS.containsKey(field)) {
+                throw new IllegalArgumentException("Unknown field: " + field + ", expected any of " + FIELDS.keySet());
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * The column of a field accepted by {@link #resolveFields}.
+     */
+    public static String columnOf(String field) {
+        return FIELDS.get(field);
+    }
+
+    public static List<String> parseFields(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(fields.split(","))
+                .map(String::trim)
+                .filter(field -> !field.isEmpty())
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    private static String encode(Cursor cursor) {
+        String key = cursor.date() + "|" + cursor.time() + "|" + cursor.id();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Cursor decode(String cursor) {
+        try {
+            String[] key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+            return new Cursor(LocalDate.parse(key[0]), LocalTime.parse(key[1]), Long.parseLong(key[2]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+}
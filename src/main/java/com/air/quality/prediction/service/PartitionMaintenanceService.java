@@ -0,0 +1,166 @@
+package com.air.quality.prediction.service;
+
+import com.air.quality.prediction.store.RecentMeasurementStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Manages the monthly partitions of {@code air_quality_data}.
+ * <p>
+ * Partitions are created ahead of time for the coming
+ * {@code airquality.partitions.months-ahead} months, and on demand before a chunk with
+ * older or later dates is written. Creating one locks the parent table, so it happens in
+ * its own short transaction rather than in the chunk's.
+ * <p>
+ * With {@code airquality.partitions.retention-months} set, months that ended longer ago
+ * are detached and renamed to {@code air_quality_data_YYYY_MM_archived_YYYYMMDD}. Their
+ * rows stay in that table, out of every query, until it is dumped or dropped.
+ */
+@Service
+public class PartitionMaintenanceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionMaintenanceService.class);
+
+    private static final String PARTITION_PREFIX = "air_quality_data_";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private static final String ATTACHED_PARTITIONS_SQL = "SELECT c.relname FROM pg_inherits i " +
+            "JOIN pg_class c ON c.oid = i.inhrelid " +
+            "WHERE i.inhparent = 'air_quality_data'::regclass AND c.relname ~ '^air_quality_data_[0-9]{4}_[0-9]{2}$'";
+
+    @Value("${airquality.partitions.months-ahead:3}")
+    private int monthsAhead;
+
+    @Value("${airquality.partitions.retention-months:0}")
+    private int retentionMonths;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate ownTransaction;
+    private final DailyStatsRollup dailyStatsRollup;
+    private final DailyQuantileRollup dailyQuantileRollup;
+    private final HourlyStatsRollup hourlyStatsRollup;
+    private final DailyAqiRollup dailyAqiRollup;
+    private final RecentMeasurementStore recentStore;
+
+    // Months whose partition is known to exist, so most chunks need no round trip.
+    private final Set<YearMonth> knownMonths = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public PartitionMaintenanceService(JdbcTemplate jdbcTemplate,
+                                       TransactionTemplate transactionTemplate,
+                                       DailyStatsRollup dailyStatsRollup,
+                                       DailyQuantileRollup dailyQuantileRollup,
+                                       HourlyStatsRollup hourlyStatsRollup,
+                                       DailyAqiRollup dailyAqiRollup,
+                                       RecentMeasurementStore recentStore) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ownTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.ownTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.dailyStatsRollup = dailyStatsRollup;
+        this.dailyQuantileRollup = dailyQuantileRollup;
+        this.hourlyStatsRollup = hourlyStatsRollup;
+        this.dailyAqiRollup = dailyAqiRollup;
+        this.recentStore = recentStore;
+    }
+
+    /**
+     * Makes sure every date of {@code dates} has a partition to go to.
+     */
+    public void ensurePartitions(Collection<LocalDate> dates) {
+        Set<YearMonth> missing = new TreeSet<>();
+        for (LocalDate date : dates) {
+            YearMonth month = YearMonth.from(date);
+            if (!knownMonths.contains(month)) {
+                missing.add(month);
+            }
+        }
+        for (YearMonth month : missing) {
+            ensurePartitions(month, month);
+        }
+    }
+
+    private void ensurePartitions(YearMonth from, YearMonth to) {
+        Integer created = ownTransaction.execute(status -> jdbcTemplate.queryForObject(
+                "SELECT ensure_air_quality_partitions(?, ?)", Integer.class,
+                from.atDay(1), to.atEndOfMonth()));
+        if (created != null && created > 0) {
+            logger.info("Created {} partition(s) of air_quality_data between {} and {}", created, from, to);
+        }
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            knownMonths.add(month);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        maintain();
+    }
+
+    /**
+     * Creates the partitions of the coming months and archives those past retention.
+     */
+    @Scheduled(cron = "${airquality.partitions.maintenance-cron:0 0 3 * * *}")
+    public void maintain() {
+        try {
+            YearMonth current = YearMonth.now();
+            ensurePartitions(current, current.plusMonths(monthsAhead));
+            if (retentionMonths > 0) {
+                archiveBefore(current.minusMonths(retentionMonths));
+            }
+        } catch (Exception e) {
+            logger.error("Partition maintenance failed", e);
+        }
+    }
+
+    /**
+     * Detaches the partitions of months before {@code oldestKept} and removes their days
+     * from the rollups.
+     *
+     * @return the names the detached partitions were archived under
+     */
+    private List<String> archiveBefore(YearMonth oldestKept) {
+        List<String> archived = new ArrayList<>();
+        String archiveSuffix = "_archived_" + LocalDate.now().format(DateTimeFormatter.BASIC_ISO_DATE);
+        for (String partition : jdbcTemplate.queryForList(ATTACHED_PARTITIONS_SQL, String.class)) {
+            YearMonth month = YearMonth.parse(partition.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX);
+            if (!month.isBefore(oldestKept)) {
+                continue;
+            }
+            String archiveName = partition + archiveSuffix;
+            ownTransaction.executeWithoutResult(status -> {
+                jdbcTemplate.execute("ALTER TABLE air_quality_data DETACH PARTITION " + partition);
+                jdbcTemplate.execute("ALTER TABLE " + partition + " RENAME TO " + archiveName);
+                dailyStatsRollup.removeRange(month.atDay(1), month.atEndOfMonth());
+                dailyQuantileRollup.removeRange(month.atDay(1), month.atEndOfMonth());
+                hourlyStatsRollup.removeRange(month.atDay(1), month.atEndOfMonth());
+                dailyAqiRollup.removeRange(month.atDay(1), month.atEndOfMonth());
+            });
+            knownMonths.remove(month);
+            archived.add(archiveName);
+            logger.info("Archived partition {} of air_quality_data as {}", partition, archiveName);
+        }
+        if (!archived.isEmpty()) {
+            recentStore.evictBefore(oldestKept.atDay(1));
+        }
+        return archived;
+    }
+}
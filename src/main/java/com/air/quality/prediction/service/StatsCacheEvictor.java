@@ -0,0 +1,62 @@
+package com.air.quality.prediction.service;
+
+import com.air.quality.prediction.config.CacheConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Evicts cached stats for dates whose rows changed.
+ * <p>
+ * Eviction waits until the changing transaction has committed. Evicting earlier would let
+ * a concurrent read cache the old values again until the TTL expires.
+ */
+@Service
+public class StatsCacheEvictor {
+
+    private final CacheManager cacheManager;
+
+    @Autowired
+    public StatsCacheEvictor(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    /**
+     * Evicts the stats of {@code dates}. Recent stats and the list of dates may include any
+     * of them, so those are cleared as a whole.
+     */
+    public void evictDates(Collection<LocalDate> dates) {
+        if (dates.isEmpty()) {
+            return;
+        }
+        List<LocalDate> evicted = List.copyOf(dates);
+        AfterCommit.run(() -> {
+            Cache dailyStats = cacheManager.getCache(CacheConfig.DAILY_STATS);
+            if (dailyStats != null) {
+                evicted.forEach(dailyStats::evict);
+            }
+            clear(CacheConfig.RECENT_DAILY_STATS);
+            clear(CacheConfig.AVAILABLE_DATES);
+        });
+    }
+
+    public void evictAll() {
+        AfterCommit.run(() -> {
+            clear(CacheConfig.DAILY_STATS);
+            clear(CacheConfig.RECENT_DAILY_STATS);
+            clear(CacheConfig.AVAILABLE_DATES);
+        });
+    }
+
+    private void clear(String name) {
+        Cache cache = cacheManager.getCache(name);
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.air.quality.prediction.sketch;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A merging t-digest: an approximation of a distribution as a sorted list of weighted
+ * centroids that answers quantile queries with small relative error near the tails, and
+ * that two digests can be merged into without access to the original values.
+ * <p>
+ * Centroids near the median may cover many values while those near the extremes cover
+ * few, as bounded by the arcsine scale function and {@code compression}. A digest keeps
+ * at most about {@code compression} centroids, whatever number of values it summarises.
+ * <p>
+ * Not thread-safe.
+ */
+public class TDigest {
+
+    public static final double DEFAULT_COMPRESSION = 100;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final double compression;
+    private double[] means;
+    private double[] weights;
+    private int centroids;
+    private double totalWeight;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    // Values added since the last compression.
+    private double[] buffer;
+    private int buffered;
+
+    public TDigest() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    public TDigest(double compression) {
+        this.compression = compression;
+        int capacity = (int) Math.ceil(compression) * 2 + 10;
+        this.means = new double[capacity];
+        this.weights = new double[capacity];
+        this.buffer = new double[capacity * 5];
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (buffered == buffer.length) {
+            compress();
+        }
+        buffer[buffered++] = value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Folds {@code other} into this digest.
+     */
+    public void merge(TDigest other) {
+        other.compress();
+        if (other.centroids == 0) {
+            return;
+        }
+        compress();
+        double[] mergedMeans = Arrays.copyOf(means, centroids + other.centroids);
+        double[] mergedWeights = Arrays.copyOf(weights, centroids + other.centroids);
+        System.arraycopy(other.means, 0, mergedMeans, centroids, other.centroids);
+        System.arraycopy(other.weights, 0, mergedWeights, centroids, other.centroids);
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        collapse(mergedMeans, mergedWeights, centroids + other.centroids);
+    }
+
+    /**
+     * The number of values summarised.
+     */
+    public long size() {
+        compress();
+        return Math.round(totalWeight);
+    }
+
+    /**
+     * The approximate value below which a fraction {@code q} of the values lie, or
+     * {@code NaN} if the digest is empty.
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1: " + q);
+        }
+        compress();
+        if (centroids == 0) {
+            return Double.NaN;
+        }
+        if (centroids == 1) {
+            return means[0];
+        }
+
+        // Each centroid's mean sits at the middle of its weight; interpolate between the
+        // neighbouring midpoints, and towards min and max beyond the first and last.
+        double index = q * totalWeight;
+        if (index < weights[0] / 2) {
+            return min + (means[0] - min) * (index / (weights[0] / 2));
+        }
+        double weightSoFar = weights[0] / 2;
+        for (int i = 0; i < centroids - 1; i++) {
+            double step = (weights[i] + weights[i + 1]) / 2;
+            if (weightSoFar + step > index) {
+                double fraction = (index - weightSoFar) / step;
+                return means[i] + (means[i + 1] - means[i]) * fraction;
+            }
+            weightSoFar += step;
+        }
+        int last = centroids - 1;
+        double fraction = Math.min(1, (index - weightSoFar) / (weights[last] / 2));
+        return means[last] + (max - means[last]) * fraction;
+    }
+
+    private void compress() {
+        if (buffered == 0) {
+            return;
+        }
+        double[] mergedMeans = Arrays.copyOf(means, centroids + buffered);
+        double[] mergedWeights = Arrays.copyOf(weights, centroids + buffered);
+        System.arraycopy(buffer, 0, mergedMeans, centroids, buffered);
+        Arrays.fill(mergedWeights, centroids, centroids + buffered, 1);
+        int count = centroids + buffered;
+        buffered = 0;
+        collapse(mergedMeans, mergedWeights, count);
+    }
+
+    // Sorts the centroids by mean and merges neighbours as long as the merged centroid
+    // spans at most one unit of the scale function.
+    private void collapse(double[] inMeans, double[] inWeights, int count) {
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(inMeans[a], inMeans[b]));
+
+        double total = 0;
+        for (int i = 0; i < count; i++) {
+            total += inWeights[i];
+        }
+
+        double[] outMeans = new double[Math.max(means.length, 16)];
+        double[] outWeights = new double[outMeans.length];
+        int out = 0;
+        double weightBefore = 0;
+        double currentMean = inMeans[order[0]];
+        double currentWeight = inWeights[order[0]];
+        for (int i = 1; i < count; i++) {
+            double mean = inMeans[order[i]];
+            double weight = inWeights[order[i]];
+            double proposed = currentWeight + weight;
+            if (scale(weightBefore + proposed, total) - scale(weightBefore, total) <= 1) {
+                currentMean += (mean - currentMean) * weight / proposed;
+                currentWeight = proposed;
+            } else {
+                if (out == outMeans.length) {
+                    outMeans = Arrays.copyOf(outMeans, out * 2);
+                    outWeights = Arrays.copyOf(outWeights, out * 2);
+                }
+                outMeans[out] = currentMean;
+                outWeights[out] = currentWeight;
+                out++;
+                weightBefore += currentWeight;
+                currentMean = mean;
+                currentWeight = weight;
+            }
+        }
+        if (out == outMeans.length) {
+            outMeans = Arrays.copyOf(outMeans, out + 1);
+            outWeights = Arrays.copyOf(outWeights, out + 1);
+        }
+        outMeans[out] = currentMean;
+        outWeights[out] = currentWeight;
+
+        means = outMeans;
+        weights = outWeights;
+        centroids = out + 1;
+        totalWeight = total;
+    }
+
+    private double scale(double weight, double total) {
+        double q = Math.min(1, weight / total);
+        return compression / (2 * Math.PI) * Math.asin(2 * q - 1);
+    }
+
+    /**
+     * The digest in a compact binary form: version, compression, min, max, centroid count,
+     * then each centroid's mean as a double and its weight as a varint.
+     */
+    public byte[] toBytes() {
+        compress();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(29 + centroids * 10);
+        ByteBuffer header = ByteBuffer.allocate(29);
+        header.put((byte) FORMAT_VERSION).putDouble(compression).putDouble(min).putDouble(max).putInt(centroids);
+        out.writeBytes(header.array());
+        ByteBuffer mean = ByteBuffer.allocate(8);
+        for (int i = 0; i < centroids; i++) {
+            mean.clear();
+            out.writeBytes(mean.putDouble(means[i]).array());
+            long weight = Math.round(weights[i]);
+            while ((weight & ~0x7FL) != 0) {
+                out.write((int) ((weight & 0x7F) | 0x80));
+                weight >>>= 7;
+            }
+            out.write((int) weight);
+        }
+        return out.toByteArray();
+    }
+
+    public static TDigest fromBytes(byte[] bytes) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        int version = in.get();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported t-digest version " + version);
+        }
+        TDigest digest = new TDigest(in.getDouble());
+        digest.min = in.getDouble();
+        digest.max = in.getDouble();
+        int count = in.getInt();
+        digest.means = new double[Math.max(count, digest.means.length)];
+        digest.weights = new double[digest.means.length];
+        for (int i = 0; i < count; i++) {
+            digest.means[i] = in.getDouble();
+            long weight = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = in.get();
+                weight |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+            }
+            digest.weights[i] = weight;
+            digest.totalWeight += weight;
+        }
+        digest.centroids = count;
+        return digest;
+    }
+}
@@ -0,0 +1,219 @@
+package com.air.quality.prediction.store;
+
+import com.air.quality.prediction.aqi.AqiCalculator;
+import com.air.quality.prediction.model.AirQualityData;
+import com.air.quality.prediction.model.AirQualityParameter;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The measurements of one day stored column by column: one primitive array per
+ * {@link AirQualityParameter}, indexed by its ordinal, with {@code NaN} standing for null,
+ * plus ids, times of day and the two text columns with repeated values shared.
+ * <p>
+ * Rows are kept in (time, id) order. Not thread-safe; {@link RecentMeasurementStore}
+ * guards access.
+ */
+final class DayColumns {
+
+    private static final List<AirQualityParameter> PARAMETERS = AirQualityParameter.all();
+
+    final LocalDate date;
+    private int size;
+    private long[] ids;
+    private long[] nanosOfDay;
+    private final double[][] values;
+    private String[] marks;
+    private String[] sourceFiles;
+    private final Map<String, String> strings = new HashMap<>();
+    private boolean sorted = true;
+
+    DayColumns(LocalDate date, int capacity) {
+        this.date = date;
+        int initial = Math.max(16, capacity);
+        ids = new long[initial];
+        nanosOfDay = new long[initial];
+        values = new double[PARAMETERS.size()][initial];
+        marks = new String[initial];
+        sourceFiles = new String[initial];
+    }
+
+    int size() {
+        return size;
+    }
+
+    long id(int row) {
+        return ids[row];
+    }
+
+    long nanoOfDay(int row) {
+        return nanosOfDay[row];
+    }
+
+    /**
+     * @return the value of a parameter, {@code NaN} if it is null
+     */
+    double value(AirQualityParameter parameter, int row) {
+        return values[parameter.ordinal()][row];
+    }
+
+    /**
+     * The first row at or after {@code nanoOfDay}, or {@link #size()} if there is none.
+     */
+    int firstRowAtOrAfter(long nanoOfDay) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (nanosOfDay[mid] < nanoOfDay) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    double epochSecond(int row) {
+        return date.toEpochDay() * 86400.0 + nanosOfDay[row] / 1e9;
+    }
+
+    void add(AirQualityData data) {
+        double[] row = new double[PARAMETERS.size()];
+        for (AirQualityParameter parameter : PARAMETERS) {
+            Double value = parameter.get(data);
+            row[parameter.ordinal()] = value == null ? Double.NaN : value;
+        }
+        add(data.getId(), data.getTime().toNanoOfDay(), row, data.getMrk(), data.getSourceFile());
+    }
+
+    /**
+     * @param row the parameter values by ordinal, {@code NaN} for null
+     */
+    void add(long id, long nanoOfDay, double[] row, String mrk, String sourceFile) {
+        if (size == ids.length) {
+            grow();
+        }
+        ids[size] = id;
+        nanosOfDay[size] = nanoOfDay;
+        for (int p = 0; p < values.length; p++) {
+            values[p][size] = row[p];
+        }
+        marks[size] = share(mrk);
+        sourceFiles[size] = share(sourceFile);
+        if (size > 0 && compare(size - 1, size) > 0) {
+            sorted = false;
+        }
+        size++;
+    }
+
+    /**
+     * Restores (time, id) order after out-of-order appends.
+     */
+    void sort() {
+        if (sorted) {
+            return;
+        }
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, this::compare);
+        permute(order);
+        sorted = true;
+    }
+
+    /**
+     * @return the number of rows removed
+     */
+    int removeSourceFile(String sourceFile) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (sourceFile.equals(sourceFiles[i])) {
+                continue;
+            }
+            if (kept != i) {
+                ids[kept] = ids[i];
+                nanosOfDay[kept] = nanosOfDay[i];
+                for (double[] column : values) {
+                    column[kept] = column[i];
+                }
+                marks[kept] = marks[i];
+                sourceFiles[kept] = sourceFiles[i];
+            }
+            kept++;
+        }
+        int removed = size - kept;
+        Arrays.fill(marks, kept, size, null);
+        Arrays.fill(sourceFiles, kept, size, null);
+        size = kept;
+        return removed;
+    }
+
+    AirQualityData toEntity(int row) {
+        AirQualityData data = new AirQualityData();
+        data.setId(ids[row]);
+        data.setDate(date);
+        data.setTime(LocalTime.ofNanoOfDay(nanosOfDay[row]));
+        data.setMeasuredAt(date.atTime(data.getTime()));
+        for (AirQualityParameter parameter : PARAMETERS) {
+            double value = values[parameter.ordinal()][row];
+            parameter.set(data, Double.isNaN(value) ? null : value);
+        }
+        data.setMrk(marks[row]);
+        data.setSourceFile(sourceFiles[row]);
+        // Cheaper to recompute from the values than to keep two more columns.
+        AqiCalculator.apply(data);
+        return data;
+    }
+
+    private int compare(int a, int b) {
+        int byTime = Long.compare(nanosOfDay[a], nanosOfDay[b]);
+        return byTime != 0 ? byTime : Long.compare(ids[a], ids[b]);
+    }
+
+    private void permute(Integer[] order) {
+        long[] newIds = new long[ids.length];
+        long[] newNanos = new long[ids.length];
+        String[] newMarks = new String[ids.length];
+        String[] newSourceFiles = new String[ids.length];
+        for (int i = 0; i < size; i++) {
+            int from = order[i];
+            newIds[i] = ids[from];
+            newNanos[i] = nanosOfDay[from];
+            newMarks[i] = marks[from];
+            newSourceFiles[i] = sourceFiles[from];
+        }
+        for (int p = 0; p < values.length; p++) {
+            double[] column = new double[ids.length];
+            for (int i = 0; i < size; i++) {
+                column[i] = values[p][order[i]];
+            }
+            values[p] = column;
+        }
+        ids = newIds;
+        nanosOfDay = newNanos;
+        marks = newMarks;
+        sourceFiles = newSourceFiles;
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        nanosOfDay = Arrays.copyOf(nanosOfDay, capacity);
+        for (int p = 0; p < values.length; p++) {
+            values[p] = Arrays.copyOf(values[p], capacity);
+        }
+        marks = Arrays.copyOf(marks, capacity);
+        sourceFiles = Arrays.copyOf(sourceFiles, capacity);
+    }
+
+    private String share(String value) {
+        return value == null ? null : strings.computeIfAbsent(value, v -> v);
+    }
+}
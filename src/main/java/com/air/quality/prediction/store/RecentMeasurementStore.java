@@ -0,0 +1,374 @@
+package com.air.quality.prediction.store;
+
+import com.air.quality.prediction.dto.DailyStatsDTO;
+import com.air.quality.prediction.model.AirQualityData;
+import com.air.quality.prediction.model.AirQualityParameter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the most recent {@code airquality.hot-store.window-days} days of measurements in
+ * memory as {@link DayColumns}, so reads of recent data do not touch PostgreSQL.
+ * <p>
+ * The window ends at the latest date seen and slides forward as newer data arrives. It is
+ * loaded from the database once the application is ready; after that, committed chunks
+ * and deletions are applied as they happen. Changes made while loading are buffered and
+ * replayed on top of the loaded rows, skipping ids already loaded.
+ * <p>
+ * Readers get {@link Optional#empty()} or {@code false} whenever the store cannot answer
+ * on its own, and fall back to the database.
+ */
+@Service
+public class RecentMeasurementStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecentMeasurementStore.class);
+
+    @FunctionalInterface
+    public interface ValueConsumer {
+        void accept(double epochSecond, double value);
+    }
+
+    private static final String LOAD_SQL = "SELECT id, date, time, " + AirQualityParameter.all().stream()
+            .map(AirQualityParameter::getColumn).collect(Collectors.joining(", ")) +
+            ", mrk, source_file FROM air_quality_data WHERE date >= ? ORDER BY date, time, id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int windowDays;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<LocalDate, DayColumns> days = new TreeMap<>();
+    private LocalDate windowEnd;
+    private boolean ready;
+    private long rows;
+    // Changes committed while the window is being loaded.
+    private List<Runnable> pending = new ArrayList<>();
+
+    @Autowired
+    public RecentMeasurementStore(JdbcTemplate jdbcTemplate,
+                                  TransactionTemplate transactionTemplate,
+                                  MeterRegistry registry,
+                                  @Value("${airquality.hot-store.window-days:30}") int windowDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransaction.setReadOnly(true);
+        this.windowDays = windowDays;
+
+        Gauge.builder("airquality.hotstore.rows", this, store -> store.read(() -> (double) store.rows))
+                .description("Measurements held in the in-memory store")
+                .register(registry);
+        Gauge.builder("airquality.hotstore.days", this, store -> store.read(() -> (double) store.days.size()))
+                .description("Days held in the in-memory store")
+                .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return windowDays > 0;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!isEnabled()) {
+            logger.info("In-memory store disabled");
+            return;
+        }
+        Thread.ofVirtual().name("hot-store-warmup").start(this::load);
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        try {
+            NavigableMap<LocalDate, DayColumns> loaded = new TreeMap<>();
+            LocalDate[] end = new LocalDate[1];
+            readOnlyTransaction.executeWithoutResult(status -> {
+                end[0] = jdbcTemplate.queryForObject("SELECT MAX(date) FROM air_quality_data", LocalDate.class);
+                if (end[0] == null) {
+                    return;
+                }
+                JdbcTemplate cursor = new JdbcTemplate(jdbcTemplate.getDataSource());
+                cursor.setFetchSize(5000);
+                cursor.query(LOAD_SQL, rs -> {
+                    LocalDate date = rs.getObject("date", LocalDate.class);
+                    DayColumns day = loaded.computeIfAbsent(date, d -> new DayColumns(d, 0));
+                    addRow(day, rs);
+                }, windowStart(end[0]));
+            });
+
+            lock.writeLock().lock();
+            try {
+                days.putAll(loaded);
+                windowEnd = end[0];
+                rows = loaded.values().stream().mapToLong(DayColumns::size).sum();
+                List<Runnable> replay = pending;
+                pending = null;
+                ready = true;
+                replay.forEach(Runnable::run);
+                logger.info("Loaded {} rows over {} days into the in-memory store in {} ms (window {} to {}), " +
+                                "replayed {} changes", rows, days.size(), System.currentTimeMillis() - start,
+                        windowEnd == null ? "-" : windowStart(windowEnd), windowEnd, replay.size());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                pending = null;
+                days.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            logger.error("Could not load the in-memory store, recent reads will use the database", e);
+        }
+    }
+
+    private static void addRow(DayColumns day, ResultSet rs) throws SQLException {
+        double[] row = new double[AirQualityParameter.all().size()];
+        for (int p = 0; p < row.length; p++) {
+            double value = rs.getDouble(4 + p);
+            row[p] = rs.wasNull() ? Double.NaN : value;
+        }
+        day.add(rs.getLong("id"), rs.getObject("time", LocalTime.class).toNanoOfDay(), row,
+                rs.getString("mrk"), rs.getString("source_file"));
+    }
+
+    /**
+     * Adds rows that have been committed. Every row must have its id set.
+     */
+    public void add(List<AirQualityData> chunk) {
+        if (!isEnabled() || chunk.isEmpty()) {
+            return;
+        }
+        List<AirQualityData> rowsToAdd = List.copyOf(chunk);
+        write(() -> apply(rowsToAdd, false), () -> apply(rowsToAdd, true));
+    }
+
+    /**
+     * Drops the rows of a source file whose rows have been deleted.
+     */
+    public void removeSourceFile(String sourceFile) {
+        if (!isEnabled()) {
+            return;
+        }
+        Runnable removal = () -> {
+            int removed = 0;
+            for (DayColumns day : days.values()) {
+                removed += day.removeSourceFile(sourceFile);
+            }
+            days.values().removeIf(day -> day.size() == 0);
+            rows -= removed;
+        };
+        write(removal, removal);
+    }
+
+    /**
+     * Drops the days before {@code date}, whose rows are no longer in the database.
+     */
+    public void evictBefore(LocalDate date) {
+        if (!isEnabled()) {
+            return;
+        }
+        Runnable eviction = () -> {
+            NavigableMap<LocalDate, DayColumns> evicted = days.headMap(date, false);
+            rows -= evicted.values().stream().mapToLong(DayColumns::size).sum();
+            evicted.clear();
+        };
+        write(eviction, eviction);
+    }
+
+    // Runs a change under the write lock, or buffers its replay while the window is loading.
+    private void write(Runnable change, Runnable replay) {
+        lock.writeLock().lock();
+        try {
+            if (ready) {
+                change.run();
+            } else if (pending != null) {
+                pending.add(replay);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(List<AirQualityData> chunk, boolean replaying) {
+        LocalDate latest = chunk.stream().map(AirQualityData::getDate).max(LocalDate::compareTo).orElseThrow();
+        if (windowEnd == null || latest.isAfter(windowEnd)) {
+            windowEnd = latest;
+            NavigableMap<LocalDate, DayColumns> expired = days.headMap(windowStart(windowEnd), false);
+            rows -= expired.values().stream().mapToLong(DayColumns::size).sum();
+            expired.clear();
+        }
+        LocalDate start = windowStart(windowEnd);
+        Map<LocalDate, Set<Long>> knownIds = new HashMap<>();
+        Set<DayColumns> touched = new HashSet<>();
+        for (AirQualityData data : chunk) {
+            if (data.getDate().isBefore(start)) {
+                continue;
+            }
+            DayColumns day = days.computeIfAbsent(data.getDate(), d -> new DayColumns(d, chunk.size()));
+            if (replaying && knownIds.computeIfAbsent(day.date, d -> ids(day)).contains(data.getId())) {
+                continue;
+            }
+            day.add(data);
+            touched.add(day);
+            rows++;
+        }
+        touched.forEach(DayColumns::sort);
+    }
+
+    private static Set<Long> ids(DayColumns day) {
+        Set<Long> ids = new HashSet<>(day.size() * 2);
+        for (int i = 0; i < day.size(); i++) {
+            ids.add(day.id(i));
+        }
+        return ids;
+    }
+
+    private LocalDate windowStart(LocalDate end) {
+        return end.minusDays(windowDays - 1L);
+    }
+
+    // Caller holds the read lock.
+    private boolean covers(LocalDate startDate, LocalDate endDate) {
+        return ready && windowEnd != null && !startDate.isAfter(endDate) && !startDate.isBefore(windowStart(windowEnd));
+    }
+
+    /**
+     * The rows of the range in (date, time, id) order, if the range lies within the window.
+     */
+    public Optional<List<AirQualityData>> findByDateRange(LocalDate startDate, LocalDate endDate) {
+        return read(() -> {
+            if (!covers(startDate, endDate)) {
+                return Optional.empty();
+            }
+            List<AirQualityData> result = new ArrayList<>();
+            for (DayColumns day : days.subMap(startDate, true, endDate, true).values()) {
+                for (int i = 0; i < day.size(); i++) {
+                    result.add(day.toEntity(i));
+                }
+            }
+            return Optional.of(result);
+        });
+    }
+
+    /**
+     * The rows measured in {@code [from, to)} in (time, id) order, if the range lies
+     * within the window.
+     */
+    public Optional<List<AirQualityData>> findByTimestampRange(LocalDateTime from, LocalDateTime to) {
+        return read(() -> {
+            if (!covers(from.toLocalDate(), to.toLocalDate())) {
+                return Optional.empty();
+            }
+            List<AirQualityData> result = new ArrayList<>();
+            for (DayColumns day : days.subMap(from.toLocalDate(), true, to.toLocalDate(), true).values()) {
+                int first = day.date.equals(from.toLocalDate())
+                        ? day.firstRowAtOrAfter(from.toLocalTime().toNanoOfDay()) : 0;
+                int end = day.date.equals(to.toLocalDate())
+                        ? day.firstRowAtOrAfter(to.toLocalTime().toNanoOfDay()) : day.size();
+                for (int i = first; i < end; i++) {
+                    result.add(day.toEntity(i));
+                }
+            }
+            return Optional.of(result);
+        });
+    }
+
+    /**
+     * Average, minimum and maximum of each of {@code parameters} on {@code date}, if the
+     * date lies within the window. Parameters without values on that day are left out.
+     */
+    public Optional<DailyStatsDTO> getDailyStats(LocalDate date, Collection<AirQualityParameter> parameters) {
+        return read(() -> {
+            if (!covers(date, date)) {
+                return Optional.empty();
+            }
+            DailyStatsDTO stats = new DailyStatsDTO(date);
+            DayColumns day = days.get(date);
+            if (day == null) {
+                return Optional.of(stats);
+            }
+            for (AirQualityParameter parameter : parameters) {
+                long count = 0;
+                double sum = 0;
+                double min = Double.POSITIVE_INFINITY;
+                double max = Double.NEGATIVE_INFINITY;
+                for (int i = 0; i < day.size(); i++) {
+                    double value = day.value(parameter, i);
+                    if (!Double.isNaN(value)) {
+                        count++;
+                        sum += value;
+                        min = Math.min(min, value);
+                        max = Math.max(max, value);
+                    }
+                }
+                if (count > 0) {
+                    stats.getAverages().put(parameter, sum / count);
+                    stats.getMinimums().put(parameter, min);
+                    stats.getMaximums().put(parameter, max);
+                }
+            }
+            return Optional.of(stats);
+        });
+    }
+
+    /**
+     * Passes the non-null values of {@code parameter} in the range to {@code consumer} in
+     * time order, with their local date and time as seconds since the epoch.
+     *
+     * @return false, without calling {@code consumer}, if the range is not within the window
+     */
+    public boolean forEachValue(AirQualityParameter parameter, LocalDate startDate, LocalDate endDate,
+                                ValueConsumer consumer) {
+        return read(() -> {
+            if (!covers(startDate, endDate)) {
+                return false;
+            }
+            for (DayColumns day : days.subMap(startDate, true, endDate, true).values()) {
+                for (int i = 0; i < day.size(); i++) {
+                    double value = day.value(parameter, i);
+                    if (!Double.isNaN(value)) {
+                        consumer.accept(day.epochSecond(i), value);
+                    }
+                }
+            }
+            return true;
+        });
+    }
+
+    private <T> T read(Supplier<T> reader) {
+        lock.readLock().lock();
+        try {
+            return reader.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+CREATE TABLE ingested_file (
+                               id BIGSERIAL PRIMARY KEY,
+                               filename VARCHAR(255) NOT NULL,
+                               size_bytes BIGINT,
+                               last_modified BIGINT,
+                               content_hash VARCHAR(64),
+                               rows_read BIGINT NOT NULL DEFAULT 0,
+                               rows_saved BIGINT NOT NULL DEFAULT 0,
+                               rows_rejected BIGINT NOT NULL DEFAULT 0,
+                               last_committed_offset BIGINT NOT NULL DEFAULT 0,
+                               status VARCHAR(20) NOT NULL,
+                               started_at TIMESTAMP,
+                               completed_at TIMESTAMP
+);
+
+
+CREATE UNIQUE INDEX idx_ingested_file_filename ON ingested_file (filename);
+
+
+-- Files ingested before the ledger existed. Size, mtime and hash are filled in the
+-- next time the file is seen.
+INSERT INTO ingested_file (filename, rows_read, rows_saved, status, completed_at)
+SELECT source_file, COUNT(*), COUNT(*), 'COMPLETED', now()
+FROM air_quality_data
+GROUP BY source_file;
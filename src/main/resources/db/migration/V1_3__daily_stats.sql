@@ -0,0 +1,22 @@
+CREATE TABLE daily_stats (
+                             date DATE NOT NULL,
+                             parameter VARCHAR(16) NOT NULL,
+                             sample_count BIGINT NOT NULL,
+                             value_sum DOUBLE PRECISION NOT NULL,
+                             min_value DOUBLE PRECISION NOT NULL,
+                             max_value DOUBLE PRECISION NOT NULL,
+                             PRIMARY KEY (date, parameter)
+);
+
+
+-- Only non-null values are counted, like AVG/MIN/MAX over the raw rows.
+INSERT INTO daily_stats (date, parameter, sample_count, value_sum, min_value, max_value)
+SELECT a.date, v.parameter, COUNT(*), SUM(v.value), MIN(v.value), MAX(v.value)
+FROM air_quality_data a
+         CROSS JOIN LATERAL (VALUES ('pm25', a.pm25), ('pm10', a.pm10), ('iaq', a.iaq), ('hcho', a.hcho),
+                                    ('co2', a.co2), ('p', a.p), ('tin', a.tin), ('tout', a.tout),
+                                    ('rhin', a.rhin), ('rhout', a.rhout), ('no2', a.no2), ('no', a.no),
+                                    ('so2', a.so2), ('h2s', a.h2s), ('co', a.co), ('hcn', a.hcn),
+                                    ('hcl', a.hcl), ('nh3', a.nh3), ('ec', a.ec)) AS v(parameter, value)
+WHERE v.value IS NOT NULL
+GROUP BY a.date, v.parameter;
@@ -0,0 +1,91 @@
+-- Range-partition air_quality_data by month of date. Each month is its own table with
+-- its own small indexes, so inserts do not slow down as history grows, date filters only
+-- touch the months they cover, and old months can be detached instead of deleted.
+
+ALTER TABLE air_quality_data RENAME TO air_quality_data_unpartitioned;
+ALTER INDEX air_quality_data_pkey RENAME TO air_quality_data_unpartitioned_pkey;
+DROP INDEX idx_air_quality_date;
+DROP INDEX idx_air_quality_source_file;
+DROP INDEX idx_air_quality_date_time;
+
+CREATE TABLE air_quality_data (
+                                  id BIGINT NOT NULL,
+                                  date DATE NOT NULL,
+                                  time TIME NOT NULL,
+                                  pm25 DOUBLE PRECISION,
+                                  pm10 DOUBLE PRECISION,
+                                  iaq DOUBLE PRECISION,
+                                  hcho DOUBLE PRECISION,
+                                  co2 DOUBLE PRECISION,
+                                  p DOUBLE PRECISION,
+                                  tin DOUBLE PRECISION,
+                                  tout DOUBLE PRECISION,
+                                  rhin DOUBLE PRECISION,
+                                  rhout DOUBLE PRECISION,
+                                  lat DOUBLE PRECISION,
+                                  lon DOUBLE PRECISION,
+                                  hdg DOUBLE PRECISION,
+                                  amsl DOUBLE PRECISION,
+                                  agl DOUBLE PRECISION,
+                                  mil DOUBLE PRECISION,
+                                  no2 DOUBLE PRECISION,
+                                  no DOUBLE PRECISION,
+                                  so2 DOUBLE PRECISION,
+                                  h2s DOUBLE PRECISION,
+                                  co DOUBLE PRECISION,
+                                  hcn DOUBLE PRECISION,
+                                  hcl DOUBLE PRECISION,
+                                  nh3 DOUBLE PRECISION,
+                                  ec DOUBLE PRECISION,
+                                  mrk VARCHAR(255),
+                                  source_file VARCHAR(255) NOT NULL,
+                                  PRIMARY KEY (id, date)
+) PARTITION BY RANGE (date);
+
+-- Keep drawing ids from the existing sequence, now as bigint and owned by the new table.
+ALTER SEQUENCE air_quality_data_id_seq AS BIGINT;
+ALTER TABLE air_quality_data ALTER COLUMN id SET DEFAULT nextval('air_quality_data_id_seq');
+ALTER SEQUENCE air_quality_data_id_seq OWNED BY air_quality_data.id;
+
+-- Rows arrive roughly in time order, so a BRIN index answers date and time range filters
+-- at a tiny fraction of a B-tree's size and insert cost. The (date, time, id) B-tree stays
+-- for the ordered reads of keyset pagination and streaming, and source_file for deleting
+-- the rows of a rewritten file.
+CREATE INDEX idx_air_quality_date_time_brin ON air_quality_data USING BRIN (date, time);
+CREATE INDEX idx_air_quality_date_time_id ON air_quality_data (date, time, id);
+CREATE INDEX idx_air_quality_source_file ON air_quality_data (source_file);
+
+-- Creates the monthly partitions covering from_date to to_date that do not exist yet.
+-- Safe to call concurrently; callers serialise on an advisory lock.
+CREATE FUNCTION ensure_air_quality_partitions(from_date DATE, to_date DATE) RETURNS INTEGER AS $$
+DECLARE
+    first_day DATE := date_trunc('month', from_date)::date;
+    partition_name TEXT;
+    created INTEGER := 0;
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext('air_quality_data_partitions'));
+    WHILE first_day <= to_date LOOP
+        partition_name := 'air_quality_data_' || to_char(first_day, 'YYYY_MM');
+        IF to_regclass(partition_name) IS NULL THEN
+            EXECUTE format('CREATE TABLE %I PARTITION OF air_quality_data FOR VALUES FROM (%L) TO (%L)',
+                           partition_name, first_day, (first_day + INTERVAL '1 month')::date);
+            created := created + 1;
+        END IF;
+        first_day := (first_day + INTERVAL '1 month')::date;
+    END LOOP;
+    RETURN created;
+END;
+$$ LANGUAGE plpgsql;
+
+-- The months that hold data, plus this month and the next three.
+SELECT ensure_air_quality_partitions(month, month)
+FROM (SELECT DISTINCT date_trunc('month', date)::date AS month FROM air_quality_data_unpartitioned) AS months;
+
+SELECT ensure_air_quality_partitions(CURRENT_DATE, (CURRENT_DATE + INTERVAL '3 months')::date);
+
+INSERT INTO air_quality_data
+SELECT * FROM air_quality_data_unpartitioned;
+
+DROP TABLE air_quality_data_unpartitioned;
+
+ANALYZE air_quality_data;
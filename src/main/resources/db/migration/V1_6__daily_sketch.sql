@@ -0,0 +1,8 @@
+-- A t-digest of each parameter per day, in the binary form of TDigest.toBytes(). Day
+-- digests merge into the digest of any range of days, so percentiles need no raw rows.
+CREATE TABLE daily_sketch (
+                              date DATE NOT NULL,
+                              parameter VARCHAR(16) NOT NULL,
+                              digest BYTEA NOT NULL,
+                              PRIMARY KEY (date, parameter)
+);
@@ -0,0 +1,19 @@
+-- The sum of squares makes the variance, and so the standard deviation, of any range of
+-- days derivable from the day rows alone, like the average from the sum and count.
+ALTER TABLE daily_stats ADD COLUMN value_sum_squares DOUBLE PRECISION NOT NULL DEFAULT 0;
+
+UPDATE daily_stats s
+SET value_sum_squares = agg.value_sum_squares
+FROM (SELECT a.date, v.parameter, SUM(v.value * v.value) AS value_sum_squares
+      FROM air_quality_data a
+               CROSS JOIN LATERAL (VALUES ('pm25', a.pm25), ('pm10', a.pm10), ('iaq', a.iaq), ('hcho', a.hcho),
+                                          ('co2', a.co2), ('p', a.p), ('tin', a.tin), ('tout', a.tout),
+                                          ('rhin', a.rhin), ('rhout', a.rhout), ('no2', a.no2), ('no', a.no),
+                                          ('so2', a.so2), ('h2s', a.h2s), ('co', a.co), ('hcn', a.hcn),
+                                          ('hcl', a.hcl), ('nh3', a.nh3), ('ec', a.ec)) AS v(parameter, value)
+      WHERE v.value IS NOT NULL
+      GROUP BY a.date, v.parameter) AS agg
+WHERE s.date = agg.date
+  AND s.parameter = agg.parameter;
+
+ALTER TABLE daily_stats ALTER COLUMN value_sum_squares DROP DEFAULT;
@@ -0,0 +1,21 @@
+-- Count and sum of each parameter per hour of measured_at. Rolling means over any number
+-- of whole hours are slid over these rows instead of over the raw measurements.
+CREATE TABLE hourly_stats (
+                              hour TIMESTAMP NOT NULL,
+                              parameter VARCHAR(16) NOT NULL,
+                              sample_count BIGINT NOT NULL,
+                              value_sum DOUBLE PRECISION NOT NULL,
+                              PRIMARY KEY (parameter, hour)
+);
+
+
+INSERT INTO hourly_stats (hour, parameter, sample_count, value_sum)
+SELECT date_trunc('hour', a.measured_at), v.parameter, COUNT(*), SUM(v.value)
+FROM air_quality_data a
+         CROSS JOIN LATERAL (VALUES ('pm25', a.pm25), ('pm10', a.pm10), ('iaq', a.iaq), ('hcho', a.hcho),
+                                    ('co2', a.co2), ('p', a.p), ('tin', a.tin), ('tout', a.tout),
+                                    ('rhin', a.rhin), ('rhout', a.rhout), ('no2', a.no2), ('no', a.no),
+                                    ('so2', a.so2), ('h2s', a.h2s), ('co', a.co), ('hcn', a.hcn),
+                                    ('hcl', a.hcl), ('nh3', a.nh3), ('ec', a.ec)) AS v(parameter, value)
+WHERE v.value IS NOT NULL
+GROUP BY 1, v.parameter;
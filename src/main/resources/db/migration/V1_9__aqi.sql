@@ -0,0 +1,25 @@
+-- US EPA air quality index of each row, from its own pm25, pm10, no2, so2 and co values,
+-- and the pollutant it comes from. Rows ingested before this migration are filled in by
+-- the application at startup, day by day.
+ALTER TABLE air_quality_data ADD COLUMN aqi SMALLINT;
+ALTER TABLE air_quality_data ADD COLUMN aqi_pollutant VARCHAR(8);
+
+-- The daily index from 24-hour PM means, the highest 1-hour NO2 and SO2 means and the
+-- highest 8-hour CO mean of the day, with each pollutant's sub-index. rows_pending marks
+-- days whose rows still lack their per-row index.
+CREATE TABLE daily_aqi (
+                           date DATE PRIMARY KEY,
+                           aqi SMALLINT,
+                           pollutant VARCHAR(8),
+                           pm25_aqi SMALLINT,
+                           pm10_aqi SMALLINT,
+                           no2_aqi SMALLINT,
+                           so2_aqi SMALLINT,
+                           co_aqi SMALLINT,
+                           rows_pending BOOLEAN NOT NULL DEFAULT FALSE
+);
+
+
+INSERT INTO daily_aqi (date, rows_pending)
+SELECT DISTINCT date, TRUE
+FROM daily_stats;
@@ -0,0 +1,116 @@
+package com.air.quality.prediction.aqi;
+
+import com.air.quality.prediction.model.AirQualityData;
+import com.air.quality.prediction.model.AirQualityParameter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AqiCalculatorTest {
+
+    @ParameterizedTest(name = "{0} {1} -> {2}")
+    @CsvSource({
+            // µg/m³; each category's edges, truncation to one decimal, and the cap.
+            "PM25, 0, 0",
+            "PM25, 9.0, 50",
+            "PM25, 9.09, 50",
+            "PM25, 9.1, 51",
+            "PM25, 12.0, 56",
+            "PM25, 35.4, 100",
+            "PM25, 35.5, 101",
+            "PM25, 55.4, 150",
+            "PM25, 55.5, 151",
+            "PM25, 125.4, 200",
+            "PM25, 125.5, 201",
+            "PM25, 225.4, 300",
+            "PM25, 225.5, 301",
+            "PM25, 325.4, 500",
+            "PM25, 325.5, 500",
+            "PM25, 1000, 500",
+            "PM25, -3, 0",
+            // µg/m³, truncated to whole numbers.
+            "PM10, 54, 50",
+            "PM10, 54.9, 50",
+            "PM10, 55, 51",
+            "PM10, 154, 100",
+            "PM10, 155, 101",
+            "PM10, 424, 300",
+            "PM10, 425, 301",
+            "PM10, 604, 500",
+            "PM10, 700, 500",
+            // ppm, against tables in ppb.
+            "NO2, 0.053, 50",
+            "NO2, 0.0539, 50",
+            "NO2, 0.054, 51",
+            "NO2, 0.1, 100",
+            "NO2, 0.101, 101",
+            "NO2, 0.36, 150",
+            "NO2, 0.361, 151",
+            "NO2, 2.049, 500",
+            "NO2, 3, 500",
+            "SO2, 0.035, 50",
+            "SO2, 0.036, 51",
+            "SO2, 0.075, 100",
+            "SO2, 0.076, 101",
+            "SO2, 1.004, 500",
+            "SO2, 1.5, 500",
+            // ppm, truncated to one decimal.
+            "CO, 4.4, 50",
+            "CO, 4.49, 50",
+            "CO, 4.5, 51",
+            "CO, 9.4, 100",
+            "CO, 9.5, 101",
+            "CO, 50.4, 500",
+            "CO, 60, 500",
+    })
+    void subIndexAtCategoryEdges(AirQualityParameter pollutant, double concentration, int expected) {
+        assertEquals(expected, AqiCalculator.subIndex(pollutant, concentration));
+    }
+
+    @Test
+    void subIndexIsUndefinedWithoutTableOrValue() {
+        assertEquals(-1, AqiCalculator.subIndex(AirQualityParameter.NO, 0.05));
+        assertEquals(-1, AqiCalculator.subIndex(AirQualityParameter.CO2, 400));
+        assertEquals(-1, AqiCalculator.subIndex(AirQualityParameter.PM25, Double.NaN));
+    }
+
+    @Test
+    void indexIsHighestSubIndexWithTiesToEarlierPollutant() {
+        Map<AirQualityParameter, Integer> subIndices = new EnumMap<>(AirQualityParameter.class);
+        assertNull(AqiCalculator.of(subIndices));
+
+        subIndices.put(AirQualityParameter.CO, 80);
+        subIndices.put(AirQualityParameter.PM10, 120);
+        subIndices.put(AirQualityParameter.NO2, 120);
+        assertEquals(new AqiCalculator.Result(120, AirQualityParameter.PM10), AqiCalculator.of(subIndices));
+
+        subIndices.put(AirQualityParameter.PM25, 120);
+        assertEquals(new AqiCalculator.Result(120, AirQualityParameter.PM25), AqiCalculator.of(subIndices));
+    }
+
+    @Test
+    void applySetsIndexAndDominantPollutantOfRow() {
+        AirQualityData data = new AirQualityData();
+        data.setPm25(35.5);
+        data.setNo2(0.2);
+        data.setCo(4.5);
+        AqiCalculator.apply(data);
+        // NO2 at 200 ppb is 101 + 49 * 99 / 259 = 119.7.
+        assertEquals(120, data.getAqi());
+        assertEquals("no2", data.getAqiPollutant());
+
+        data.setPm25(null);
+        data.setNo2(null);
+        data.setCo(null);
+        data.setNo(1.0);
+        AqiCalculator.apply(data);
+        assertNull(data.getAqi());
+        assertNull(data.getAqiPollutant());
+    }
+}
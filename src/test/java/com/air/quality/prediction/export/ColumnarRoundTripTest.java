@@ -0,0 +1,169 @@
+package com.air.quality.prediction.export;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnarRoundTripTest {
+
+    private static final List<ColumnarWriter.Column> COLUMNS = List.of(
+            new ColumnarWriter.Column("pm25", ColumnarWriter.ColumnType.DOUBLE),
+            new ColumnarWriter.Column("co", ColumnarWriter.ColumnType.DOUBLE),
+            new ColumnarWriter.Column("source_file", ColumnarWriter.ColumnType.TEXT));
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    // A row as written: a null Double or String is left unset.
+    private record Row(long id, LocalDateTime timestamp, Double[] doubles, String text) {
+    }
+
+    @Test
+    void headerOnlyExportHasNoRows() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ColumnarWriter(out, COLUMNS).finish();
+
+        try (ColumnarReader reader = new ColumnarReader(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(COLUMNS, reader.getColumns());
+            assertEquals(2, reader.columnIndex("source_file"));
+            assertEquals(-1, reader.columnIndex("no2"));
+            assertFalse(reader.next());
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    void decimalBlocksRoundTrip() throws IOException {
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            Double pm25 = i % 7 == 3 ? null : (i * 37 % 200) / 10.0 - 3.5;
+            Double co = i % 5 == 0 ? null : (i % 3) / 1000.0;
+            String file = i % 4 == 1 ? null : "file-" + (i % 3) + ".csv";
+            rows.add(new Row(1000 + i, START.plusSeconds(10L * i), new Double[]{pm25, co}, file));
+        }
+        assertRoundTrip(rows, 4);
+    }
+
+    @Test
+    void xorFallbackRoundTrips() throws IOException {
+        // None of these is n / 10^k for k up to 6, and -0.0 is not a scaled integer either.
+        double[] values = {Math.PI, -0.0, -0.0, 0.0, 1e-7, 1e300, -Double.MIN_VALUE, Double.MAX_VALUE,
+                Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 1.0 / 3, 1.0 / 3, 12.5};
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < values.length; i++) {
+            Double co = i % 2 == 0 ? null : values[values.length - 1 - i];
+            rows.add(new Row(i, START.plusMinutes(i), new Double[]{values[i], co}, null));
+        }
+        assertRoundTrip(rows, 5);
+        assertRoundTrip(rows, ColumnarWriter.DEFAULT_BLOCK_ROWS);
+    }
+
+    @Test
+    void negativeZeroAloneIsKept() throws IOException {
+        List<Row> rows = List.of(
+                new Row(1, START, new Double[]{-0.0, 0.0}, "a"),
+                new Row(2, START.plusSeconds(1), new Double[]{1.5, -0.0}, "a"));
+        assertRoundTrip(rows, 8);
+    }
+
+    @Test
+    void allNullColumnsAndBlocksRoundTrip() throws IOException {
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            Double pm25 = i < 3 ? null : (double) i;
+            rows.add(new Row(i, START.plusHours(i), new Double[]{pm25, null}, null));
+        }
+        assertRoundTrip(rows, 3);
+    }
+
+    @Test
+    void irregularKeysAndRandomValuesRoundTripOverManyBlocks() throws IOException {
+        Random random = new Random(42);
+        List<Row> rows = new ArrayList<>();
+        long id = 5_000_000;
+        LocalDateTime timestamp = START;
+        for (int i = 0; i < 20_000; i++) {
+            // Ids and timestamps mostly advance by a fixed step but sometimes jump either way.
+            id += random.nextInt(10) == 0 ? random.nextInt(2001) - 1000 : 1;
+            timestamp = random.nextInt(10) == 0
+                    ? timestamp.plusNanos((random.nextInt(2_000_001) - 1_000_000) * 1000L)
+                    : timestamp.plusSeconds(10);
+            Double pm25 = random.nextInt(6) == 0 ? null : Math.round(random.nextGaussian() * 1000) / 100.0;
+            Double co = random.nextInt(6) == 0 ? null
+                    : random.nextInt(50) == 0 ? random.nextDouble() : Math.round(random.nextDouble() * 500) / 10.0;
+            String file = random.nextInt(6) == 0 ? null : "file-" + random.nextInt(5) + ".csv";
+            rows.add(new Row(id, timestamp, new Double[]{pm25, co}, file));
+        }
+        assertRoundTrip(rows, 1000);
+        assertRoundTrip(rows, 1);
+        assertRoundTrip(rows, ColumnarWriter.DEFAULT_BLOCK_ROWS);
+    }
+
+    @Test
+    void truncatedExportFails() throws IOException {
+        List<Row> rows = List.of(new Row(1, START, new Double[]{1.5, Math.PI}, "a"));
+        byte[] bytes = write(rows, 8);
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 3);
+
+        assertThrows(EOFException.class, () -> {
+            try (ColumnarReader reader = new ColumnarReader(new ByteArrayInputStream(truncated))) {
+                while (reader.next()) {
+                    reader.getId();
+                }
+            }
+        });
+    }
+
+    private static void assertRoundTrip(List<Row> rows, int blockRows) throws IOException {
+        byte[] bytes = write(rows, blockRows);
+        try (ColumnarReader reader = new ColumnarReader(new ByteArrayInputStream(bytes))) {
+            assertEquals(COLUMNS, reader.getColumns());
+            for (int i = 0; i < rows.size(); i++) {
+                Row row = rows.get(i);
+                assertTrue(reader.next(), "row " + i);
+                assertEquals(row.id(), reader.getId(), "id of row " + i);
+                assertEquals(row.timestamp(), reader.getTimestamp(), "timestamp of row " + i);
+                for (int c = 0; c < row.doubles().length; c++) {
+                    // Raw bits, so -0.0 must come back as -0.0 and a null as NaN.
+                    Double expected = row.doubles()[c];
+                    assertEquals(Double.doubleToRawLongBits(expected == null ? Double.NaN : expected),
+                            Double.doubleToRawLongBits(reader.getDouble(c)), "column " + c + " of row " + i);
+                }
+                assertEquals(row.text(), reader.getText(2), "text of row " + i);
+            }
+            assertFalse(reader.next());
+        }
+    }
+
+    private static byte[] write(List<Row> rows, int blockRows) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnarWriter writer = new ColumnarWriter(out, COLUMNS, blockRows);
+        for (Row row : rows) {
+            writer.startRow(row.id(), row.timestamp());
+            for (int c = 0; c < row.doubles().length; c++) {
+                if (row.doubles()[c] != null) {
+                    writer.setDouble(c, row.doubles()[c]);
+                }
+            }
+            writer.setText(2, row.text());
+            writer.endRow();
+        }
+        writer.finish();
+        byte[] bytes = out.toByteArray();
+        assertArrayEquals(ColumnarFormat.MAGIC, Arrays.copyOf(bytes, ColumnarFormat.MAGIC.length));
+        return bytes;
+    }
+}
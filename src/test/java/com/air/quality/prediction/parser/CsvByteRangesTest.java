@@ -0,0 +1,91 @@
+package com.air.quality.prediction.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvByteRangesTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void everySplitReadsEachLineOnce() throws Exception {
+        String content = "DATE,TIME,PM25\n"
+                + "2024-01-01,00:00:00,1.5\r\n"
+                + "2024-01-01,00:00:10,2.5\n"
+                + "\r\n"
+                + "2024-01-01,00:00:20,zażółć\r\n"
+                + "2024-01-01,00:00:30,4.5";
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        List<String> expected = List.of("2024-01-01,00:00:00,1.5", "2024-01-01,00:00:10,2.5", "",
+                "2024-01-01,00:00:20,zażółć", "2024-01-01,00:00:30,4.5");
+
+        // Up to one part per byte, so range boundaries land on every offset, including
+        // mid-line, between \r and \n, and inside multi-byte characters.
+        for (int parts = 1; parts <= bytes.length; parts++) {
+            assertEquals(expected, readAll(bytes, parts), "parts = " + parts);
+        }
+    }
+
+    @Test
+    void trailingNewlineAddsNoEmptyLine() throws Exception {
+        byte[] bytes = "H\r\na\r\nb\r\n".getBytes(StandardCharsets.US_ASCII);
+        for (int parts = 1; parts <= bytes.length; parts++) {
+            assertEquals(List.of("a", "b"), readAll(bytes, parts), "parts = " + parts);
+        }
+    }
+
+    @Test
+    void rangesStartAtLineStartsAndCoverTheData() throws Exception {
+        byte[] bytes = "header\n111\n22\n3333\n4\n".getBytes(StandardCharsets.US_ASCII);
+        try (FileChannel channel = open(bytes)) {
+            long dataStart = CsvByteRanges.skipLine(channel, 0);
+            assertEquals(7, dataStart);
+            for (int parts = 1; parts <= bytes.length; parts++) {
+                List<CsvByteRanges.Range> ranges = CsvByteRanges.split(channel, dataStart, parts);
+                long expectedStart = dataStart;
+                for (CsvByteRanges.Range range : ranges) {
+                    assertEquals(expectedStart, range.start());
+                    assertEquals('\n', bytes[(int) range.start() - 1], "range starts mid-line: " + range);
+                    expectedStart = range.end();
+                }
+                assertEquals(bytes.length, expectedStart);
+            }
+        }
+    }
+
+    @Test
+    void headerOnlyFileHasNoRanges() throws Exception {
+        try (FileChannel channel = open("DATE,TIME\n".getBytes(StandardCharsets.US_ASCII))) {
+            assertTrue(CsvByteRanges.split(channel, CsvByteRanges.skipLine(channel, 0), 4).isEmpty());
+        }
+    }
+
+    private List<String> readAll(byte[] bytes, int parts) throws IOException, InterruptedException {
+        List<String> lines = new ArrayList<>();
+        try (FileChannel channel = open(bytes)) {
+            for (CsvByteRanges.Range range : CsvByteRanges.split(channel, CsvByteRanges.skipLine(channel, 0), parts)) {
+                CsvByteRanges.forEachLine(channel, range, StandardCharsets.UTF_8, lines::add);
+            }
+        }
+        return lines;
+    }
+
+    private FileChannel open(byte[] bytes) throws IOException {
+        Path file = Files.createTempFile(dir, "ranges", ".csv");
+        Files.write(file, bytes);
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+}
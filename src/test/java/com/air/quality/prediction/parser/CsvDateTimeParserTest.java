@@ -0,0 +1,122 @@
+package com.air.quality.prediction.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CsvDateTimeParserTest {
+
+    private static final String[] DATE_PATTERNS = {
+            "yyyy-MM-dd", "dd-MM-yyyy", "MM/dd/yyyy", "yyMMdd"
+    };
+
+    private static final String[] TIME_PATTERNS = {
+            "HH:mm:ss", "HH:mm:ss.SSS", "HH:mm", "HHmmss"
+    };
+
+    @ParameterizedTest
+    @EnumSource(CsvDateTimeParser.DateLayout.class)
+    void fastDateMatchesFormatter(CsvDateTimeParser.DateLayout layout) {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(DATE_PATTERNS[layout.ordinal()]);
+        for (LocalDate date = LocalDate.of(2000, 1, 1); date.getYear() < 2030; date = date.plusDays(1)) {
+            String text = formatter.format(date);
+            assertEquals(date, CsvDateTimeParser.parseDateFast(text, layout), text);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(CsvDateTimeParser.DateLayout.class)
+    void fastDateAgreesWithFormatterOnOddInput(CsvDateTimeParser.DateLayout layout) {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(DATE_PATTERNS[layout.ordinal()]);
+        // Days past the end of the month, impossible months and days, and non-digits.
+        String[] samples = switch (layout) {
+            case ISO -> new String[]{"2024-02-30", "2023-02-29", "2024-04-31", "2024-13-01", "2024-00-10",
+                    "2024-01-00", "2024-01-32", "2024-1-01", "2024/01/01", "20x4-01-01"};
+            case DAY_MONTH_YEAR -> new String[]{"30-02-2024", "31-04-2024", "01-13-2024", "00-01-2024",
+                    "1-01-2024", "01/01/2024"};
+            case MONTH_DAY_YEAR -> new String[]{"02/30/2024", "04/31/2024", "13/01/2024", "01/00/2024",
+                    "1/01/2024", "01-01-2024"};
+            case COMPACT -> new String[]{"240230", "241301", "240100", "2401011", "24011"};
+        };
+        for (String text : samples) {
+            // The fast path may give up where a formatter still succeeds, since the value then
+            // falls back to the formatters, but must never accept a value they reject.
+            LocalDate fast = CsvDateTimeParser.parseDateFast(text, layout);
+            if (fast != null) {
+                assertEquals(LocalDate.parse(text, formatter), fast, text);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(CsvDateTimeParser.TimeLayout.class)
+    void fastTimeMatchesFormatter(CsvDateTimeParser.TimeLayout layout) {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(TIME_PATTERNS[layout.ordinal()]);
+        int step = layout == CsvDateTimeParser.TimeLayout.MINUTES ? 60 : 1;
+        for (int seconds = 0; seconds < 24 * 3600; seconds += step) {
+            LocalTime time = LocalTime.ofSecondOfDay(seconds);
+            if (layout == CsvDateTimeParser.TimeLayout.MILLIS) {
+                time = time.plusNanos((seconds % 1000) * 1_000_000L);
+            }
+            String text = formatter.format(time);
+            assertEquals(LocalTime.parse(text, formatter), CsvDateTimeParser.parseTimeFast(text, layout), text);
+        }
+    }
+
+    @Test
+    void fastPathTrimsLikeTheFormatterPath() {
+        assertEquals(LocalDate.of(2024, 3, 5),
+                CsvDateTimeParser.parseDateFast("  2024-03-05\t", CsvDateTimeParser.DateLayout.ISO));
+        assertEquals(LocalTime.of(7, 8, 9),
+                CsvDateTimeParser.parseTimeFast(" 07:08:09 ", CsvDateTimeParser.TimeLayout.SECONDS));
+    }
+
+    @Test
+    void fastTimeRejectsOutOfRangeFields() {
+        assertNull(CsvDateTimeParser.parseTimeFast("24:00:00", CsvDateTimeParser.TimeLayout.SECONDS));
+        assertNull(CsvDateTimeParser.parseTimeFast("12:60:00", CsvDateTimeParser.TimeLayout.SECONDS));
+        assertNull(CsvDateTimeParser.parseTimeFast("12:00:60", CsvDateTimeParser.TimeLayout.SECONDS));
+        assertNull(CsvDateTimeParser.parseTimeFast("12:00:00,123", CsvDateTimeParser.TimeLayout.MILLIS));
+    }
+
+    @ParameterizedTest
+    @EnumSource(CsvDateTimeParser.DateLayout.class)
+    void firstValueFixesTheDateLayout(CsvDateTimeParser.DateLayout layout) {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(DATE_PATTERNS[layout.ordinal()]);
+        LocalDate date = LocalDate.of(2024, 12, 31);
+        CsvDateTimeParser parser = new CsvDateTimeParser();
+        assertEquals(date, parser.parseDate(formatter.format(date)));
+        assertEquals(1, parser.getSlowPathCount());
+        assertEquals(date.minusDays(40), parser.parseDate(formatter.format(date.minusDays(40))));
+        assertEquals(1, parser.getSlowPathCount());
+        assertEquals(layout.name() + "/?", parser.describeLayout());
+    }
+
+    @ParameterizedTest
+    @EnumSource(CsvDateTimeParser.TimeLayout.class)
+    void firstValueFixesTheTimeLayout(CsvDateTimeParser.TimeLayout layout) {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(TIME_PATTERNS[layout.ordinal()]);
+        LocalTime time = LocalTime.of(13, 45, 0);
+        CsvDateTimeParser parser = new CsvDateTimeParser();
+        assertEquals(time, parser.parseTime(formatter.format(time)));
+        assertEquals(time.plusHours(2), parser.parseTime(formatter.format(time.plusHours(2))));
+        assertEquals(1, parser.getSlowPathCount());
+        assertEquals("?/" + layout.name(), parser.describeLayout());
+    }
+
+    @Test
+    void valuesOffTheDetectedLayoutFallBackToTheFormatters() {
+        CsvDateTimeParser parser = new CsvDateTimeParser();
+        assertEquals(LocalDate.of(2024, 1, 2), parser.parseDate("2024-01-02"));
+        assertEquals(LocalDate.of(2024, 1, 3), parser.parseDate("03-01-2024"));
+        assertEquals(2, parser.getSlowPathCount());
+        assertNull(parser.parseDate("not a date"));
+    }
+}
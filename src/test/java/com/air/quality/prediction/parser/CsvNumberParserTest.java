@@ -0,0 +1,86 @@
+package com.air.quality.prediction.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CsvNumberParserTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "0", "-0", "+0", "0.0", "-0.0", "00012.50", "1", "-1", "+1", ".5", "5.", "-.5",
+            "12.34", "0.1", "0.3", "123456.789", "1e3", "1E3", "1e+3", "1e-3", "-2.5e-7", "+7.25E10",
+            "1e22", "1e-22", "1e23", "1e-23", "9007199254740992", "9007199254740993",
+            "123456789012345", "1234567890123456", "12345678901234567", "0.12345678901234567",
+            "123456789012345678", "1234567890123456789", "0.000000000000000000001234",
+            "1.7976931348623157e308", "4.9e-324", "1e400", "1e-400", "1e1000",
+            "  42.5  ", "\t-3.25\t"
+    })
+    void matchesParseDouble(String text) {
+        assertSameDouble(Double.parseDouble(text.trim()), new CsvNumberParser().parse(text), text);
+    }
+
+    @Test
+    void matchesParseDoubleForRandomDecimals() {
+        Random random = new Random(42);
+        CsvNumberParser parser = new CsvNumberParser();
+        for (int i = 0; i < 100_000; i++) {
+            int digits = 1 + random.nextInt(20);
+            StringBuilder text = new StringBuilder();
+            if (random.nextInt(4) == 0) {
+                text.append(random.nextBoolean() ? '-' : '+');
+            }
+            int dot = random.nextInt(digits + 1);
+            for (int d = 0; d < digits; d++) {
+                if (d == dot) {
+                    text.append('.');
+                }
+                text.append((char) ('0' + random.nextInt(10)));
+            }
+            if (random.nextInt(3) == 0) {
+                text.append(String.format(Locale.ROOT, "e%d", random.nextInt(61) - 30));
+            }
+            String value = text.toString();
+            assertSameDouble(Double.parseDouble(value), parser.parse(value), value);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "   ", "null", "NULL", "Null"})
+    void blankAndNullAreNull(String text) {
+        CsvNumberParser parser = new CsvNumberParser();
+        assertNull(parser.parse(text));
+        assertEquals(0, parser.getInvalidCount());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"abc", "1,5", "1.2.3", "e5", "--1", "1e", "1e+", "-"})
+    void invalidValuesAreNullAndCounted(String text) {
+        CsvNumberParser parser = new CsvNumberParser();
+        assertNull(parser.parse(text));
+        assertEquals(1, parser.getInvalidCount());
+    }
+
+    @Test
+    void plainDecimalsStayOnTheFastPath() {
+        CsvNumberParser parser = new CsvNumberParser();
+        parser.parse("12.34");
+        parser.parse("-0.5");
+        parser.parse("1e3");
+        assertEquals(0, parser.getSlowPathCount());
+        parser.parse("12345678901234567890");
+        assertEquals(1, parser.getSlowPathCount());
+    }
+
+    // Compares bit patterns, so -0.0 and 0.0 are told apart.
+    private static void assertSameDouble(double expected, Double actual, String text) {
+        assertEquals(Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(actual),
+                () -> text + ": expected " + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,81 @@
+package com.air.quality.prediction.service;
+
+import com.air.quality.prediction.model.AirQualityData;
+import com.air.quality.prediction.repository.AirQualityRepository;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AirQualityStreamServiceTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 1, 1);
+
+    // As configured in application.properties.
+    private static final ObjectMapper OBJECT_MAPPER = JsonMapper.builder()
+            .findAndAddModules()
+            .serializationInclusion(JsonInclude.Include.NON_NULL)
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+
+    private final AirQualityRepository repository = mock(AirQualityRepository.class);
+    private AirQualityStreamService service;
+
+    @BeforeEach
+    void setUp() {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        service = new AirQualityStreamService(repository, OBJECT_MAPPER, transactionManager);
+        ReflectionTestUtils.setField(service, "entityManager", mock(EntityManager.class));
+
+        when(repository.streamByDateRange(DAY, DAY)).thenAnswer(invocation ->
+                Stream.of(row(1, "00:00:10", 12.5), row(2, "00:00:20", 13.0)));
+    }
+
+    @Test
+    void ndjsonIsOneObjectPerLine() throws IOException {
+        assertOutput(true, """
+                {"id":1,"date":"2024-01-01","time":"00:00:10","pm25":12.5}
+                {"id":2,"date":"2024-01-01","time":"00:00:20","pm25":13.0}
+                """);
+    }
+
+    @Test
+    void jsonIsOneArray() throws IOException {
+        assertOutput(false, "[{\"id\":1,\"date\":\"2024-01-01\",\"time\":\"00:00:10\",\"pm25\":12.5}," +
+                "{\"id\":2,\"date\":\"2024-01-01\",\"time\":\"00:00:20\",\"pm25\":13.0}]");
+    }
+
+    private void assertOutput(boolean ndjson, String expected) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.writeDateRange(DAY, DAY, out, ndjson);
+        assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), out.toByteArray(), out::toString);
+    }
+
+    private static AirQualityData row(long id, String time, double pm25) {
+        AirQualityData data = new AirQualityData();
+        data.setId(id);
+        data.setDate(DAY);
+        data.setTime(LocalTime.parse(time));
+        data.setPm25(pm25);
+        return data;
+    }
+}
@@ -0,0 +1,132 @@
+package com.air.quality.prediction.service;
+
+import com.air.quality.prediction.aqi.AqiCalculator;
+import com.air.quality.prediction.dto.SeriesPointDTO;
+import com.air.quality.prediction.model.AirQualityParameter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DailyAqiRollupTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 1, 10);
+    private static final LocalDate NEXT_DAY = DAY.plusDays(1);
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final HourlyStatsRollup hourlyStatsRollup = mock(HourlyStatsRollup.class);
+    private final DailyAqiRollup rollup = new DailyAqiRollup(jdbcTemplate, mock(TransactionTemplate.class),
+            hourlyStatsRollup, mock(StatsCacheEvictor.class));
+
+    // Daily means by date and parameter, as daily_stats returns them.
+    private final Map<LocalDate, Map<AirQualityParameter, Double>> dailyMeans = new HashMap<>();
+
+    @BeforeEach
+    void answerDailyStatsQuery() throws Exception {
+        doAnswer(invocation -> {
+            String[] sql = new String[1];
+            Connection connection = mock(Connection.class);
+            when(connection.prepareStatement(anyString())).thenAnswer(prepare -> {
+                sql[0] = prepare.getArgument(0);
+                return mock(PreparedStatement.class);
+            });
+            when(connection.createArrayOf(anyString(), any())).thenReturn(mock(Array.class));
+            invocation.<PreparedStatementCreator>getArgument(0).createPreparedStatement(connection);
+            if (sql[0].contains("FROM daily_stats")) {
+                RowCallbackHandler handler = invocation.getArgument(1);
+                for (var day : dailyMeans.entrySet()) {
+                    for (var mean : day.getValue().entrySet()) {
+                        ResultSet rs = mock(ResultSet.class);
+                        when(rs.getDate("date")).thenReturn(Date.valueOf(day.getKey()));
+                        when(rs.getString("parameter")).thenReturn(mean.getKey().getColumn());
+                        when(rs.getDouble("mean")).thenReturn(mean.getValue());
+                        handler.processRow(rs);
+                    }
+                }
+            }
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        // The rolling means of both days; the 8-hour CO window ending at 03:00 on NEXT_DAY
+        // reaches back into DAY.
+        when(hourlyStatsRollup.getRollingMeans(eq(AirQualityParameter.CO), any(), any(),
+                eq(HourlyStatsRollup.Window.EIGHT_HOURS))).thenReturn(List.of(
+                SeriesPointDTO.point(DAY.atTime(12, 0), 5.0),
+                SeriesPointDTO.point(NEXT_DAY.atTime(3, 0), 9.5)));
+        when(hourlyStatsRollup.getRollingMeans(eq(AirQualityParameter.NO2), any(), any(),
+                eq(HourlyStatsRollup.Window.ONE_HOUR))).thenReturn(List.of(
+                SeriesPointDTO.point(DAY.atTime(8, 0), 0.03),
+                SeriesPointDTO.point(DAY.atTime(9, 0), 0.06)));
+        when(hourlyStatsRollup.getRollingMeans(eq(AirQualityParameter.SO2), any(), any(),
+                eq(HourlyStatsRollup.Window.ONE_HOUR))).thenReturn(List.of());
+    }
+
+    @Test
+    void dayWithoutRowsIgnoresWindowsFromPreviousDay() {
+        dailyMeans.put(DAY, Map.of(AirQualityParameter.PM25, 12.0, AirQualityParameter.CO2, 600.0));
+
+        Map<LocalDate, Object[]> updates = recompute(DAY);
+
+        assertEquals(List.of(DAY, NEXT_DAY), new ArrayList<>(updates.keySet()));
+        Object[] day = updates.get(DAY);
+        // PM2.5 12.0 is 56, NO2 at 60 ppb is 57 and CO at 5.0 ppm is 56.
+        assertEquals(Arrays.asList(57, "no2", 56, null, 57, null, 56), Arrays.asList(day).subList(0, 7));
+        Object[] nextDay = updates.get(NEXT_DAY);
+        assertEquals(Arrays.asList(null, null, null, null, null, null, null), Arrays.asList(nextDay).subList(0, 7));
+    }
+
+    @Test
+    void dayWithRowsKeepsWindowsReachingIntoPreviousDay() {
+        dailyMeans.put(DAY, Map.of(AirQualityParameter.PM25, 12.0));
+        dailyMeans.put(NEXT_DAY, Map.of(AirQualityParameter.PM10, 20.0));
+
+        Object[] nextDay = recompute(DAY).get(NEXT_DAY);
+
+        // CO 9.5 from the window ending at 03:00 is the highest of the day.
+        assertEquals(AqiCalculator.subIndex(AirQualityParameter.CO, 9.5), nextDay[0]);
+        assertEquals("co", nextDay[1]);
+        assertEquals(AqiCalculator.subIndex(AirQualityParameter.PM10, 20.0), nextDay[3]);
+        assertNull(nextDay[2]);
+    }
+
+    // Recomputes date and returns the daily_aqi update of each affected day.
+    private Map<LocalDate, Object[]> recompute(LocalDate date) {
+        rollup.recompute(List.of(date));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> captor = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(startsWith("UPDATE daily_aqi"), captor.capture(), any(int[].class));
+        Map<LocalDate, Object[]> updates = new LinkedHashMap<>();
+        for (Object[] row : captor.getValue()) {
+            updates.put(((Date) row[row.length - 1]).toLocalDate(), row);
+        }
+        return updates;
+    }
+}
@@ -0,0 +1,182 @@
+package com.air.quality.prediction.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TDigestTest {
+
+    private static final double[] QUANTILES = {0, 0.001, 0.01, 0.05, 0.25, 0.5, 0.75, 0.95, 0.99, 0.999, 1};
+
+    @Test
+    void emptyDigestHasNoQuantiles() {
+        TDigest digest = new TDigest();
+        assertEquals(0, digest.size());
+        assertTrue(Double.isNaN(digest.quantile(0.5)));
+        assertTrue(Double.isNaN(TDigest.fromBytes(digest.toBytes()).quantile(0.5)));
+    }
+
+    @Test
+    void singleValueIsEveryQuantile() {
+        TDigest digest = new TDigest();
+        digest.add(42.5);
+        digest.add(Double.NaN);
+        assertEquals(1, digest.size());
+        for (double q : QUANTILES) {
+            assertEquals(42.5, digest.quantile(q));
+        }
+    }
+
+    @Test
+    void rejectsQuantilesOutsideZeroToOne() {
+        TDigest digest = new TDigest();
+        digest.add(1);
+        assertThrows(IllegalArgumentException.class, () -> digest.quantile(-0.01));
+        assertThrows(IllegalArgumentException.class, () -> digest.quantile(1.01));
+    }
+
+    @Test
+    void quantilesAreAccurate() {
+        Random random = new Random(42);
+        assertAccurate(random::nextDouble);
+        assertAccurate(random::nextGaussian);
+        // Skewed like pollutant readings: mostly low with a long upper tail.
+        assertAccurate(() -> Math.exp(random.nextGaussian() * 1.5));
+        // Heavily repeated values, as sensors with coarse resolution produce.
+        assertAccurate(() -> random.nextInt(20) / 10.0);
+    }
+
+    @Test
+    void keepsCentroidCountBounded() {
+        TDigest digest = new TDigest();
+        Random random = new Random(42);
+        for (int i = 0; i < 1_000_000; i++) {
+            digest.add(random.nextGaussian());
+        }
+        // 29 header bytes, then at most 8 bytes of mean and a few of weight per centroid.
+        assertTrue(digest.toBytes().length < 29 + 2 * TDigest.DEFAULT_COMPRESSION * 12,
+                "digest of " + digest.toBytes().length + " bytes");
+    }
+
+    @Test
+    void roundTripsThroughBytes() {
+        Random random = new Random(42);
+        TDigest digest = new TDigest();
+        for (int i = 0; i < 50_000; i++) {
+            digest.add(random.nextGaussian() * 10 + 3);
+        }
+
+        byte[] bytes = digest.toBytes();
+        TDigest copy = TDigest.fromBytes(bytes);
+        assertEquals(digest.size(), copy.size());
+        for (double q : QUANTILES) {
+            assertEquals(digest.quantile(q), copy.quantile(q), "q=" + q);
+        }
+        assertArrayEquals(bytes, copy.toBytes());
+    }
+
+    @Test
+    void copyFromBytesKeepsAcceptingValues() {
+        TDigest digest = new TDigest();
+        for (int i = 0; i < 1000; i++) {
+            digest.add(i);
+        }
+        TDigest copy = TDigest.fromBytes(digest.toBytes());
+        for (int i = 1000; i < 2000; i++) {
+            copy.add(i);
+        }
+        assertEquals(2000, copy.size());
+        assertEquals(0, copy.quantile(0));
+        assertEquals(1999, copy.quantile(1));
+        assertEquals(1000, copy.quantile(0.5), 20);
+    }
+
+    @Test
+    void rejectsUnknownVersion() {
+        byte[] bytes = new TDigest().toBytes();
+        bytes[0] = 99;
+        assertThrows(IllegalArgumentException.class, () -> TDigest.fromBytes(bytes));
+    }
+
+    @Test
+    void mergedDigestsMatchOneDigestOfAllValues() {
+        Random random = new Random(42);
+        int parts = 30;
+        double[] values = new double[parts * 3_000];
+        TDigest merged = new TDigest();
+        for (int p = 0; p < parts; p++) {
+            // Each part covers its own, shifted, part of the distribution, like daily digests.
+            TDigest part = new TDigest();
+            for (int i = 0; i < 3_000; i++) {
+                double value = Math.exp(random.nextGaussian()) + p * 0.1;
+                values[p * 3_000 + i] = value;
+                part.add(value);
+            }
+            // Through bytes, as stored digests are merged.
+            merged.merge(TDigest.fromBytes(part.toBytes()));
+        }
+        merged.merge(new TDigest());
+
+        Arrays.sort(values);
+        assertEquals(values.length, merged.size());
+        assertEquals(values[0], merged.quantile(0));
+        assertEquals(values[values.length - 1], merged.quantile(1));
+        assertRanksWithin(values, merged, 0.01);
+    }
+
+    private static void assertAccurate(DoubleSupplier source) {
+        double[] values = new double[100_000];
+        TDigest digest = new TDigest();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = source.getAsDouble();
+            digest.add(values[i]);
+        }
+        Arrays.sort(values);
+        assertEquals(values.length, digest.size());
+        assertEquals(values[0], digest.quantile(0));
+        assertEquals(values[values.length - 1], digest.quantile(1));
+        assertRanksWithin(values, digest, 0.005);
+    }
+
+    // The fraction of values at or below each estimate must be within tolerance of q, and
+    // within a tenth of it at the extreme quantiles, where the digest keeps small centroids.
+    private static void assertRanksWithin(double[] sorted, TDigest digest, double tolerance) {
+        for (double q : QUANTILES) {
+            double estimate = digest.quantile(q);
+            double below = lowerBound(sorted, estimate) / (double) sorted.length;
+            double atOrBelow = upperBound(sorted, estimate) / (double) sorted.length;
+            double allowed = q <= 0.001 || q >= 0.999 ? tolerance / 10 : tolerance;
+            assertTrue(q >= below - allowed && q <= atOrBelow + allowed,
+                    "q=" + q + " estimate=" + estimate + " ranks " + below + ".." + atOrBelow);
+        }
+    }
+
+    private static int lowerBound(double[] sorted, double value) {
+        int index = Arrays.binarySearch(sorted, value);
+        if (index < 0) {
+            return -index - 1;
+        }
+        while (index > 0 && sorted[index - 1] == value) {
+            index--;
+        }
+        return index;
+    }
+
+    private static int upperBound(double[] sorted, double value) {
+        int index = Arrays.binarySearch(sorted, value);
+        if (index < 0) {
+            return -index - 1;
+        }
+        while (index < sorted.length && sorted[index] == value) {
+            index++;
+        }
+        return index;
+    }
+}